@@ -0,0 +1,88 @@
+package peony;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures turning whole games into json or the binary format and back,
+ * which is what happens when you save and load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+    @Param({"1", "20"})
+    public int layouts;
+    @Param({"100", "1000"})
+    public int size;
+    @Param({"8"})
+    public int depth;
+    private Path root;
+    private Game game;
+    private JSONObject json;
+    private byte[] binary;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(3);
+        this.root = Path.of("synthetic.json").toAbsolutePath();
+        this.game = Synthetic.game(
+            random,
+            this.layouts,
+            this.size,
+            this.depth
+        );
+        this.json = this.game.toJson(this.root);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            this.game.write(new BinaryWriter(bytes), this.root);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.binary = bytes.toByteArray();
+    }
+
+    @Benchmark
+    public JSONObject toJson() {
+        return this.game.toJson(this.root);
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        this.game.write(new JsonWriter(Writer.nullWriter()), this.root);
+    }
+
+    @Benchmark
+    public Result<Game> fromJson() {
+        return Game.fromJson(this.json, this.root);
+    }
+
+    @Benchmark
+    public void writeBinary() throws IOException {
+        this.game.write(
+            new BinaryWriter(OutputStream.nullOutputStream()),
+            this.root
+        );
+    }
+
+    @Benchmark
+    public Result<Game> readBinary() throws IOException {
+        return Game.read(
+            new BinaryReader(new ByteArrayInputStream(this.binary)),
+            this.root
+        );
+    }
+}
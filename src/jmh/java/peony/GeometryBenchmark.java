@@ -0,0 +1,64 @@
+package peony;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the little geometry bits that get called over and over again
+ * whenever anything is drawn or clicked on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryBenchmark {
+    public static final int POINTS = 1024;
+    private Transformation transformation;
+    private ShapeLeaf shape;
+    private Point[] points;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        this.transformation = new Transformation(
+            new Point(30, -12),
+            0.7f,
+            1.3f
+        );
+        this.shape = Synthetic.shape(random);
+        this.points = Synthetic.points(
+            random,
+            GeometryBenchmark.POINTS,
+            ShapeLeaf.DEFAULT_RADIUS * 1.5f
+        );
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GeometryBenchmark.POINTS)
+    public void transformationIn(Blackhole hole) {
+        for (Point point: this.points) {
+            hole.consume(this.transformation.in(point));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GeometryBenchmark.POINTS)
+    public void transformationOut(Blackhole hole) {
+        for (Point point: this.points) {
+            hole.consume(this.transformation.out(point));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GeometryBenchmark.POINTS)
+    public void shapeInsideLocal(Blackhole hole) {
+        for (Point point: this.points) {
+            hole.consume(this.shape.insideLocal(point));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package peony;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures finding leaves under the mouse and drawing whole layouts, on
+ * made up layouts of different sizes and depths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LeafBenchmark {
+    public static final int HITS = 256;
+    public static final int CANVAS_SIZE = 1024;
+    @Param({"100", "1000", "10000"})
+    public int size;
+    @Param({"4", "16"})
+    public int depth;
+    private Layout layout;
+    private Leaf root;
+    private Point[] points;
+    private BufferedImage canvas;
+    private Graphics2D g;
+    private Transformation camera;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(2);
+        this.layout = Synthetic.layout(random, "bench", this.size, this.depth);
+        this.root = (Leaf)this.layout.getRoot();
+        this.points = Synthetic.points(
+            random,
+            LeafBenchmark.HITS,
+            Synthetic.SPREAD * 3
+        );
+        this.canvas = new BufferedImage(
+            LeafBenchmark.CANVAS_SIZE,
+            LeafBenchmark.CANVAS_SIZE,
+            BufferedImage.TYPE_INT_ARGB_PRE
+        );
+        this.g = this.canvas.createGraphics();
+        this.g.setClip(
+            0,
+            0,
+            LeafBenchmark.CANVAS_SIZE,
+            LeafBenchmark.CANVAS_SIZE
+        );
+        this.camera = new Transformation(
+            new Point(LeafBenchmark.CANVAS_SIZE / 2f),
+            0,
+            1
+        );
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.g.dispose();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LeafBenchmark.HITS)
+    public void hit(Blackhole hole) {
+        for (Point point: this.points) hole.consume(this.root.hit(point));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LeafBenchmark.HITS)
+    public void layoutHit(Blackhole hole) {
+        for (Point point: this.points) hole.consume(this.layout.hit(point));
+    }
+
+    @Benchmark
+    public int render() {
+        Renderer r = new Renderer(this.g, null, null);
+        r.push(this.camera);
+        this.root.render(r);
+        return r.getDrawnCount();
+    }
+}
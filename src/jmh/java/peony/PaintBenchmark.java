@@ -0,0 +1,79 @@
+package peony;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures painting the whole window with a layout full of sprites on it,
+ * with the atlas page either converted into the screen's format or left how
+ * it came out of the png decoder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+    public static final int SPRITES = 500;
+    @Param({"false", "true"})
+    public boolean convert;
+    private Path dir;
+    private Window window;
+    private BufferedImage canvas;
+    private Graphics2D g;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(5);
+        ImageCache.getShared().setConvert(this.convert);
+        this.dir = Files.createTempDirectory("peony-paint");
+        TextureAtlas atlas = new TextureAtlas(
+            Synthetic.atlas(random, this.dir, 1, 64).toFile()
+        );
+        atlas.awaitPages();
+        this.window = new Window();
+        this.window.setDoubleBuffered(false);
+        this.window.setSize(Window.NORMAL_WIDTH, Window.NORMAL_HEIGHT);
+        this.window.setLayout(Synthetic.sprites(
+            random,
+            "sprites",
+            atlas,
+            PaintBenchmark.SPRITES
+        ));
+        this.canvas = new BufferedImage(
+            Window.NORMAL_WIDTH,
+            Window.NORMAL_HEIGHT,
+            BufferedImage.TYPE_INT_RGB
+        );
+        this.g = this.canvas.createGraphics();
+        this.g.setClip(0, 0, Window.NORMAL_WIDTH, Window.NORMAL_HEIGHT);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.g.dispose();
+        ImageCache.getShared().setConvert(true);
+        try (Stream<Path> files = Files.walk(this.dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(
+                path -> path.toFile().delete()
+            );
+        }
+    }
+
+    @Benchmark
+    public BufferedImage paint() {
+        this.window.invalidateLayer();
+        this.window.paint(this.g);
+        return this.canvas;
+    }
+}
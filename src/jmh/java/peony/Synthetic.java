@@ -0,0 +1,229 @@
+package peony;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Makes up games, layouts and texture atlases for the benchmarks to chew
+ * on. Everything is made from a random number generator so if you give it
+ * the same seed you get the same stuff every time.
+ */
+public class Synthetic {
+    public static final float SPREAD = 200;
+    public static final int SHAPE_POINTS = 8;
+
+    /**
+     * Makes a layout with a tree of shape and point leaves in it.
+     * @param random is where the randomness comes from.
+     * @param name   is the name to give the layout.
+     * @param size   is the number of leaves to put in the tree including the
+     *               root.
+     * @param depth  is the number of levels the tree should have. If there
+     *               are not enough leaves it will have fewer.
+     * @return the new layout.
+     */
+    public static Layout layout(
+        Random random,
+        String name,
+        int size,
+        int depth
+    ) {
+        Layout layout = new Layout(name);
+        List<Leaf> leaves = new ArrayList<>();
+        List<Integer> levels = new ArrayList<>();
+        leaves.add((Leaf)layout.getRoot());
+        levels.add(0);
+        for (int i = 1; i < size; i++) {
+            int parent;
+            if (i < depth) {
+                parent = i - 1;
+            } else {
+                do {
+                    parent = random.nextInt(leaves.size());
+                } while (levels.get(parent) >= depth - 1);
+            }
+            Leaf leaf = Synthetic.leaf(random);
+            leaves.get(parent).addChild(leaf);
+            leaves.add(leaf);
+            levels.add(levels.get(parent) + 1);
+        }
+        return layout;
+    }
+
+    /**
+     * Makes a game with a bunch of layouts all under the first one.
+     * @param random  is where the randomness comes from.
+     * @param layouts is the number of layouts to make.
+     * @param size    is the number of leaves in each layout.
+     * @param depth   is the depth of the leaf tree in each layout.
+     * @return the new game.
+     */
+    public static Game game(Random random, int layouts, int size, int depth) {
+        Layout first = Synthetic.layout(random, "first", size, depth);
+        for (int i = 1; i < layouts; i++) {
+            first.addChild(Synthetic.layout(
+                random,
+                String.format("layout%d", i),
+                size,
+                depth
+            ));
+        }
+        return new Game("synthetic", "1.0.0", first, null);
+    }
+
+    /**
+     * Makes a layout that is just a lot of sprites under the root, each one
+     * using a random region of a texture atlas.
+     * @param random is where the randomness comes from.
+     * @param name   is the name to give the layout.
+     * @param atlas  is the atlas to get the regions from.
+     * @param count  is the number of sprites to make.
+     * @return the new layout.
+     */
+    public static Layout sprites(
+        Random random,
+        String name,
+        TextureAtlas atlas,
+        int count
+    ) {
+        Layout layout = new Layout(name);
+        Leaf root = (Leaf)layout.getRoot();
+        List<TextureAtlas.Region> regions = new ArrayList<>(
+            atlas.getRegions()
+        );
+        for (int i = 0; i < count; i++) {
+            SpriteLeaf sprite = new SpriteLeaf();
+            sprite.setSprite(regions.get(random.nextInt(regions.size())));
+            Point position = Synthetic.points(random, 1, Synthetic.SPREAD)[0];
+            sprite.getTransformation().setTranslation(
+                position.getX(),
+                position.getY()
+            );
+            sprite.getTransformation().setScale(random.nextFloat() + 0.5f);
+            root.addChild(sprite);
+        }
+        return layout;
+    }
+
+    /**
+     * Makes a bunch of random points.
+     * @param random is where the randomness comes from.
+     * @param n      is the number of points to make.
+     * @param range  is how far from the origin they can go in each direction.
+     * @return the points.
+     */
+    public static Point[] points(Random random, int n, float range) {
+        Point[] points = new Point[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = new Point(
+                (random.nextFloat() * 2 - 1) * range,
+                (random.nextFloat() * 2 - 1) * range
+            );
+        }
+        return points;
+    }
+
+    /**
+     * Makes a shape with some extra wonky points on it.
+     * @param random is where the randomness comes from.
+     * @return the shape.
+     */
+    public static ShapeLeaf shape(Random random) {
+        ShapeLeaf shape = new ShapeLeaf();
+        Point point = shape.getPointByPosition(
+            Point.fromAngle(0, ShapeLeaf.DEFAULT_RADIUS)
+        );
+        for (int i = ShapeLeaf.MIN_POINTS; i < Synthetic.SHAPE_POINTS; i++) {
+            point = shape.splitEdge(point);
+            point.add(Synthetic.points(random, 1, 20)[0]);
+        }
+        shape.invalidateBounds();
+        return shape;
+    }
+
+    /**
+     * Writes out a texture atlas in the same format that libgdx makes, along
+     * with it's page images.
+     * @param random  is where the randomness comes from.
+     * @param dir     is the directory to put it all in.
+     * @param pages   is the number of page images to make.
+     * @param regions is the number of regions to put on each page.
+     * @return the path to the atlas file.
+     * @throws IOException if the files can't be written.
+     */
+    public static Path atlas(
+        Random random,
+        Path dir,
+        int pages,
+        int regions
+    ) throws IOException {
+        int cell = 32;
+        int across = (int)Math.ceil(Math.sqrt(regions));
+        int side = across * cell;
+        Path file = dir.resolve("synthetic.atlas");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            for (int page = 0; page < pages; page++) {
+                String image = String.format("page%d.png", page);
+                BufferedImage pixels = new BufferedImage(
+                    side,
+                    side,
+                    BufferedImage.TYPE_INT_ARGB
+                );
+                for (int x = 0; x < side; x++) {
+                    for (int y = 0; y < side; y++) {
+                        pixels.setRGB(x, y, random.nextInt());
+                    }
+                }
+                ImageIO.write(pixels, "png", dir.resolve(image).toFile());
+                out.println();
+                out.println(image);
+                out.printf("size: %d,%d%n", side, side);
+                out.println("format: RGBA8888");
+                out.println("filter: Linear,Linear");
+                out.println("repeat: none");
+                for (int i = 0; i < regions; i++) {
+                    out.printf("region%d_%d%n", page, i);
+                    out.println("  rotate: false");
+                    out.printf(
+                        "  xy: %d, %d%n",
+                        i % across * cell,
+                        i / across * cell
+                    );
+                    out.printf("  size: %d, %d%n", cell, cell);
+                    out.printf("  orig: %d, %d%n", cell, cell);
+                    out.println("  offset: 0, 0");
+                    out.println("  index: -1");
+                }
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Makes a single randomly placed leaf which is either a shape or a point.
+     * @param random is where the randomness comes from.
+     * @return the leaf.
+     */
+    private static Leaf leaf(Random random) {
+        Leaf leaf = random.nextInt(4) == 0 ?
+            new PointLeaf() :
+            Synthetic.shape(random);
+        Point position = Synthetic.points(random, 1, Synthetic.SPREAD)[0];
+        leaf.getTransformation().setTranslation(
+            position.getX(),
+            position.getY()
+        );
+        leaf.getTransformation().setRotation(
+            random.nextFloat() * (float)Math.PI * 2
+        );
+        leaf.getTransformation().setScale(random.nextFloat() + 0.5f);
+        return leaf;
+    }
+}
@@ -0,0 +1,63 @@
+package peony;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures loading a texture atlas, both just until the constructor returns
+ * and until all of it's page images have been decoded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TextureAtlasBenchmark {
+    @Param({"1", "4"})
+    public int pages;
+    @Param({"64", "256"})
+    public int regions;
+    private Path dir;
+    private File file;
+
+    @Setup
+    public void setup() throws IOException {
+        this.dir = Files.createTempDirectory("peony-atlas");
+        this.file = Synthetic.atlas(
+            new Random(4),
+            this.dir,
+            this.pages,
+            this.regions
+        ).toFile();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(this.dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(
+                path -> path.toFile().delete()
+            );
+        }
+    }
+
+    @Benchmark
+    public TextureAtlas parse() throws IOException {
+        return new TextureAtlas(this.file);
+    }
+
+    @Benchmark
+    public TextureAtlas decode() throws IOException {
+        TextureAtlas atlas = new TextureAtlas(this.file);
+        atlas.awaitPages();
+        return atlas;
+    }
+}
@@ -1,5 +1,6 @@
 package peony;
 
+import javax.swing.SwingWorker;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
@@ -9,6 +10,8 @@ import javax.swing.text.Document;
 import java.awt.event.*;
 import java.io.File;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 public class App {
     /**
@@ -37,11 +40,15 @@ public class App {
         // Loading.
         view.addLoadListener((ActionEvent event) -> {
             File file = view.chooseGameFile();
-            if (file != null) {
-                Result<Void> result = model.load(file);
-                if (!result.success()) view.displayError(result.message());
-                else view.setGame(model.getGame());
-            }
+            if (file != null) App.load(view, model, file);
+        });
+        // Toggling lazy loading.
+        view.addLazyListener((ActionEvent event) -> {
+            model.setLazy(view.getLazy());
+        });
+        // Toggling split saving.
+        view.addSplitListener((ActionEvent event) -> {
+            model.setSplit(view.getSplit());
         });
         // Saving.
         view.addSaveListener((ActionEvent event) -> {
@@ -51,13 +58,7 @@ public class App {
                 if (file == null) return;
                 model.setFile(file);
             }
-            Result<Void> result = model.save();
-            if (result.success()) {
-                history.addToHistory(model.getFile().toPath().toAbsolutePath());
-                view.displayError("Saved nicely.");
-            } else {
-                view.displayError(result.message());
-            }
+            App.save(view, model, history);
         });
         // Quitting.
         view.addQuitListener((ActionEvent event) -> {
@@ -108,46 +109,54 @@ public class App {
         view.addChangeXPositionListener((ChangeEvent event) -> {
             Leaf leaf = model.getSelectedLeaf();
             if (leaf == null) return;
-            leaf.getTransformation()
-                .getTranslation()
-                .setX(view.getPosition().getX());
-            view.getWindow().repaint();
+            view.getWindow().repaintLeaf(leaf, () -> {
+                leaf.getTransformation().setTranslation(
+                    view.getPosition().getX(),
+                    leaf.getTransformation().getTranslation().getY()
+                );
+            });
         });
         view.addChangeYPositionListener((ChangeEvent event) -> {
             Leaf leaf = model.getSelectedLeaf();
             if (leaf == null) return;
-            leaf.getTransformation()
-                .getTranslation()
-                .setY(view.getPosition().getY());
-            view.getWindow().repaint();
+            view.getWindow().repaintLeaf(leaf, () -> {
+                leaf.getTransformation().setTranslation(
+                    leaf.getTransformation().getTranslation().getX(),
+                    view.getPosition().getY()
+                );
+            });
         });
         // Changing leaf scale by form.
         view.addChangeScaleListener((ChangeEvent event) -> {
             Leaf leaf = model.getSelectedLeaf();
             if (leaf == null) return;
-            leaf.getTransformation().setScale(view.getScale());
-            view.getWindow().repaint();
+            view.getWindow().repaintLeaf(leaf, () -> {
+                leaf.getTransformation().setScale(view.getScale());
+            });
         });
         // Changing leaf rotation by form.
         view.addChangeRotationListener((ChangeEvent event) -> {
             Leaf leaf = model.getSelectedLeaf();
             if (leaf == null) return;
-            leaf.getTransformation().setRotation(view.getRotation());
-            view.getWindow().repaint();
+            view.getWindow().repaintLeaf(leaf, () -> {
+                leaf.getTransformation().setRotation(view.getRotation());
+            });
         });
         // Changing leaf lock value.
         view.addChangeLockedListener((ActionEvent event) -> {
             Leaf leaf = model.getSelectedLeaf();
             if (leaf == null) return;
             leaf.setLocked(view.getLocked());
-            view.getWindow().repaint();
+            view.getWindow().repaintLeaf(leaf);
         });
         // Changing image leaf image
         view.addSelectImageListener((ActionEvent event) -> {
             File file = view.chooseImageFile();
             Leaf leaf = model.getSelectedLeaf();
             if (file != null && leaf instanceof ImageLeaf) {
-                ((ImageLeaf)leaf).setFile(file);
+                view.getWindow().repaintLeaf(leaf, () -> {
+                    ((ImageLeaf)leaf).setFile(file);
+                });
             }
         });
         // Changing sprite leaf sprite.
@@ -159,7 +168,9 @@ public class App {
             } else if (leaf instanceof SpriteLeaf) {
                 TextureAtlas.Region sprite = view.chooseSprite(atlas);
                 if (sprite != null) {
-                    ((SpriteLeaf)leaf).setSprite(sprite);
+                    view.getWindow().repaintLeaf(leaf, () -> {
+                        ((SpriteLeaf)leaf).setSprite(sprite);
+                    });
                 }
             }
         });
@@ -168,7 +179,6 @@ public class App {
             Leaf leaf = view.getSelectedLeaf();
             model.setSelectedLeaf(leaf);
             view.setLeaf(leaf);
-            view.getWindow().repaint();
         });
         // Selecting a layout in the map list.
         view.addMapTreeListener((TreeSelectionEvent event) -> {
@@ -176,6 +186,9 @@ public class App {
             if (layout != null) {
                 model.setSelectedLayout(layout);
                 view.setLayout(layout);
+                if (layout.getError() != null) {
+                    view.displayError(layout.getError());
+                }
             }
         });
         // Splitting points on a shape.
@@ -184,9 +197,12 @@ public class App {
             Leaf selected = window.getSelected();
             Point selectedPoint = window.getSelectedPoint();
             if (selectedPoint != null && selected instanceof ShapeLeaf) {
-                Point newly = ((ShapeLeaf)selected).splitEdge(selectedPoint);
-                if (newly != null) window.setSelectedPoint(newly);
-                window.repaint();
+                window.repaintLeaf(selected, () -> {
+                    Point newly = ((ShapeLeaf)selected).splitEdge(
+                        selectedPoint
+                    );
+                    if (newly != null) window.setSelectedPoint(newly);
+                });
             }
         });
         // removing points on a shape.
@@ -195,9 +211,12 @@ public class App {
             Leaf selected = window.getSelected();
             Point selectedPoint = window.getSelectedPoint();
             if (selectedPoint != null && selected instanceof ShapeLeaf) {
-                Point newly = ((ShapeLeaf)selected).removePoint(selectedPoint);
-                window.setSelectedPoint(newly);
-                window.repaint();
+                window.repaintLeaf(selected, () -> {
+                    Point newly = ((ShapeLeaf)selected).removePoint(
+                        selectedPoint
+                    );
+                    window.setSelectedPoint(newly);
+                });
             }
         });
         // recentring a shape.
@@ -205,8 +224,9 @@ public class App {
             Window window = view.getWindow();
             Leaf selected = window.getSelected();
             if (selected instanceof ShapeLeaf) {
-                ((ShapeLeaf)selected).recentre();
-                window.repaint();
+                window.repaintLeaf(selected, () -> {
+                    ((ShapeLeaf)selected).recentre();
+                });
             }
         });
         // Changing the game name.
@@ -276,14 +296,149 @@ public class App {
         // History selecting.
         for (Path path: history.getHistory()) {
             view.addRecentButtonAndListen(path, (ActionEvent event) -> {
-                Result<Void> result = model.load(path.toFile());
-                if (!result.success()) view.displayError(result.message());
-                else view.setGame(model.getGame());
+                App.load(view, model, path.toFile());
             });
         }
     	view.setVisible(true);
     }
 
+    /**
+     * Loads a game on a background thread so that the program can keep on
+     * going while it happens. The progress bar counts up the layouts as they
+     * are read, and once the whole thing is loaded it gets swapped into the
+     * model and view in one go.
+     * @param view  is the app view.
+     * @param model is the app model.
+     * @param file  is the file to load.
+     */
+    private static void load(View view, Model model, File file) {
+        boolean lazy = model.isLazy();
+        view.setBusy(true);
+        view.showProgress("Loading...", 0, -1);
+        new SwingWorker<Result<Game>, Layout>() {
+            private int done = 0;
+
+            @Override
+            protected Result<Game> doInBackground() {
+                return Model.readGame(
+                    file,
+                    (Layout layout) -> this.publish(layout),
+                    lazy
+                );
+            }
+
+            @Override
+            protected void process(List<Layout> layouts) {
+                this.done += layouts.size();
+                view.showProgress(
+                    String.format("Loaded %d layouts", this.done),
+                    this.done,
+                    -1
+                );
+            }
+
+            @Override
+            protected void done() {
+                view.hideProgress();
+                view.setBusy(false);
+                Result<Game> result = App.finish(this);
+                if (result.success()) {
+                    model.setGame(result.value(), file);
+                    view.setGame(model.getGame());
+                    view.setSplit(model.isSplit());
+                    String error = model.getSelectedLayout().getError();
+                    if (error != null) view.displayError(error);
+                } else {
+                    view.displayError(result.message());
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Saves the game on a background thread. A copy of the game is taken
+     * first and that is what gets saved, so you can keep on editing the real
+     * one while the save is happening without messing it up.
+     * @param view    is the app view.
+     * @param model   is the app model which must have a file set.
+     * @param history is the history to add the file to once it is saved.
+     */
+    private static void save(View view, Model model, History history) {
+        File file = model.getFile();
+        boolean split = model.isSplit();
+        Game snapshot = model.snapshot();
+        int total = App.countLayouts(snapshot.getFirstLayout());
+        view.setBusy(true);
+        view.showProgress("Saving...", 0, total);
+        new SwingWorker<Result<Void>, Layout>() {
+            private int done = 0;
+
+            @Override
+            protected Result<Void> doInBackground() {
+                return Model.writeGame(
+                    snapshot,
+                    file,
+                    (Layout layout) -> this.publish(layout),
+                    split
+                );
+            }
+
+            @Override
+            protected void process(List<Layout> layouts) {
+                this.done += layouts.size();
+                view.showProgress(
+                    String.format("Saved %d of %d layouts", this.done, total),
+                    this.done,
+                    total
+                );
+            }
+
+            @Override
+            protected void done() {
+                view.hideProgress();
+                view.setBusy(false);
+                Result<Void> result = App.finish(this);
+                if (result.success()) {
+                    snapshot.markSaved();
+                    history.addToHistory(file.toPath().toAbsolutePath());
+                    view.displayError("Saved nicely.");
+                } else {
+                    view.displayError(result.message());
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Gets the result out of a swing worker that has finished, turning any
+     * exception it threw into a failed result.
+     * @param worker is the worker which must be done.
+     * @param <T>    is the type of thing in the result.
+     * @return the result.
+     */
+    private static <T> Result<T> finish(SwingWorker<Result<T>, ?> worker) {
+        try {
+            return worker.get();
+        } catch (InterruptedException e) {
+            return Result.fail("Interrupted.");
+        } catch (ExecutionException e) {
+            return Result.fail("%s", e.getCause());
+        }
+    }
+
+    /**
+     * Counts a layout and all of the layouts below it.
+     * @param layout is the layout to count from.
+     * @return the number of layouts.
+     */
+    private static int countLayouts(Layout layout) {
+        int count = 1;
+        for (Layout child: layout.getChildren()) {
+            count += App.countLayouts(child);
+        }
+        return count;
+    }
+
     /**
      * Gives a leaf a name.
      * @param view is the app view.
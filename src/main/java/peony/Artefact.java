@@ -2,13 +2,14 @@ package peony;
 
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.nio.file.Path;
 
 /**
  * Represents anything that actually needs to be saved into the game file.
  * Originally this recorded when they were edited but then I was like who
  * cares when it was edited so now all it does is mandates a function for
- * converting to json.
+ * converting to json, and one for writing json straight out to a stream.
  */
 public interface Artefact {
     /**
@@ -16,4 +17,16 @@ public interface Artefact {
      * @return the created json object representing this artefact.
      */
     public JSONObject toJson(Path root);
+
+    /**
+     * Writes this artefact out as json. By default it just converts it with
+     * toJson and writes that, but anything that can be big should write
+     * itself out bit by bit instead.
+     * @param out  is the json writer to write to.
+     * @param root is the path to the main game file.
+     * @throws IOException if the writing fails.
+     */
+    public default void write(JsonWriter out, Path root) throws IOException {
+        out.value(this.toJson(root));
+    }
 }
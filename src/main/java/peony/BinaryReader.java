@@ -0,0 +1,233 @@
+package peony;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads stuff that was written by BinaryWriter. Anything wrong with the data
+ * comes out as an IOException, and running out of data early comes out as
+ * an EOFException.
+ */
+public class BinaryReader {
+    private final List<String> strings = new ArrayList<>();
+    private final DataInputStream in;
+    private ProgressListener listener = null;
+    private boolean lazy = false;
+    private int version = BinaryWriter.VERSION;
+
+    /**
+     * Creates the binary reader. The stream should be buffered.
+     * @param in is the stream to read from.
+     */
+    public BinaryReader(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    /**
+     * Sets the thing that gets told each time a whole layout has been read.
+     * @param listener is the listener, which can be null.
+     */
+    public void setListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Tells you whether layouts should be read lazily, which means their
+     * leaves are kept in the form they were read in and only get built when
+     * the layout is actually used.
+     * @return true if they should be lazy.
+     */
+    public boolean isLazy() {
+        return this.lazy;
+    }
+
+    /**
+     * Sets whether layouts should be read lazily.
+     * @param lazy is whether they should be lazy.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Tells the listener that a whole layout has been read, if there is a
+     * listener.
+     * @param layout is the layout that is done.
+     */
+    public void layoutDone(Layout layout) {
+        if (this.listener != null) this.listener.layoutDone(layout);
+    }
+
+    /**
+     * Tells you if a stream starts with the magic bytes of a binary game
+     * file, without using up any of the stream.
+     * @param in is the stream which has to support mark and reset.
+     * @return true iff it's a binary game file.
+     * @throws IOException if the reading fails.
+     */
+    public static boolean isBinary(InputStream in) throws IOException {
+        byte[] magic = new byte[BinaryWriter.MAGIC.length];
+        in.mark(magic.length);
+        int n = in.readNBytes(magic, 0, magic.length);
+        in.reset();
+        return n == magic.length && Arrays.equals(magic, BinaryWriter.MAGIC);
+    }
+
+    /**
+     * Reads the magic bytes and version from the start of a binary game file
+     * and makes sure they are right.
+     * @throws IOException if they are not right or the reading fails.
+     */
+    public void readHeader() throws IOException {
+        byte[] magic = new byte[BinaryWriter.MAGIC.length];
+        this.in.readFully(magic);
+        if (!Arrays.equals(magic, BinaryWriter.MAGIC)) {
+            throw new IOException("Not a binary game file.");
+        }
+        int version = this.readVarint();
+        if (version < 1 || version > BinaryWriter.VERSION) {
+            throw new IOException(String.format(
+                "Unsupported binary game file version: %d",
+                version
+            ));
+        }
+        this.version = version;
+    }
+
+    /**
+     * Gives you the version of the file being read, which is only known
+     * once the header has been read. Version 1 files have no segment files.
+     * @return the version.
+     */
+    public int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Reads a varint.
+     * @return the number.
+     * @throws IOException if the reading fails or the varint is too long.
+     */
+    public int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = this.in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint.");
+    }
+
+    /**
+     * Reads a float.
+     * @return the float.
+     * @throws IOException if the reading fails.
+     */
+    public float readFloat() throws IOException {
+        return this.in.readFloat();
+    }
+
+    /**
+     * Reads a boolean.
+     * @return the boolean.
+     * @throws IOException if the reading fails.
+     */
+    public boolean readBoolean() throws IOException {
+        return this.in.readBoolean();
+    }
+
+    /**
+     * Reads a string, either from the stream or from the table of strings
+     * that have been read already.
+     * @return the string.
+     * @throws IOException if the reading fails or the string is not real.
+     */
+    public String readString() throws IOException {
+        int index = this.readVarint();
+        if (index > 0) {
+            if (index > this.strings.size()) {
+                throw new IOException("Malformed string reference.");
+            }
+            return this.strings.get(index - 1);
+        }
+        byte[] bytes = this.readBytes(this.readVarint());
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        this.strings.add(value);
+        return value;
+    }
+
+    /**
+     * Reads a block of bytes that has it's length in front.
+     * @return the bytes.
+     * @throws IOException if the reading fails.
+     */
+    public byte[] readBlock() throws IOException {
+        return this.readBytes(this.readVarint());
+    }
+
+    /**
+     * Skips over a block of bytes that has it's length in front without
+     * keeping them.
+     * @throws IOException if the reading fails.
+     */
+    public void skipBlock() throws IOException {
+        int n = this.readVarint();
+        if (n < 0) throw new IOException("Malformed length.");
+        while (n > 0) {
+            int skipped = this.in.skipBytes(n);
+            if (skipped == 0) {
+                if (this.in.read() == -1) throw new EOFException();
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    /**
+     * Reads a leaf block that was written by writeLeafBlock.
+     * @param root is the folder the game file is in.
+     * @return the leaf or an error.
+     * @throws IOException if the reading fails.
+     */
+    public Result<Leaf> readLeafBlock(Path root) throws IOException {
+        return BinaryReader.readLeafBlock(this.readBlock(), root);
+    }
+
+    /**
+     * Reads a leaf from the content of a leaf block.
+     * @param block is the content of the block.
+     * @param root  is the folder the game file is in.
+     * @return the leaf or an error.
+     * @throws IOException if the reading fails.
+     */
+    public static Result<Leaf> readLeafBlock(
+        byte[] block,
+        Path root
+    ) throws IOException {
+        BinaryReader reader = new BinaryReader(
+            new ByteArrayInputStream(block)
+        );
+        return Leaf.read(reader, root);
+    }
+
+    /**
+     * Reads a given number of bytes.
+     * @param n is the number of bytes.
+     * @return the bytes.
+     * @throws IOException if the reading fails.
+     */
+    private byte[] readBytes(int n) throws IOException {
+        if (n < 0) throw new IOException("Malformed length.");
+        byte[] bytes = this.in.readNBytes(n);
+        if (bytes.length != n) throw new EOFException();
+        return bytes;
+    }
+}
@@ -0,0 +1,250 @@
+package peony;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes stuff out in peony's compact binary game format. Whole numbers are
+ * written as varints, floats are written as their raw four bytes, and
+ * strings are interned so that each different string is only written once
+ * and after that it is just a number. The table of strings is built up as
+ * it goes so there is no need to know them all up front. Sections that need
+ * to be readable on their own, like the leaves of a layout, are written
+ * with their own writer into a block that has it's length in front.
+ * In split mode the leaf blocks go in files of their own in a folder next to
+ * the game file instead, and only the ones that have changed get written.
+ */
+public class BinaryWriter {
+    public static final byte[] MAGIC = {'P', 'E', 'O', 'N', 'Y', 'B', 'I', 'N'};
+    public static final int VERSION = 2;
+    public static final String EXTENSION = "pny";
+    public static final String SEGMENT_FOLDER = "layouts";
+    public static final String SEGMENT_EXTENSION = "leaves";
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final Set<String> segments = new HashSet<>();
+    private final DataOutputStream out;
+    private ProgressListener listener = null;
+    private boolean split = false;
+
+    /**
+     * Creates the binary writer. The stream should be buffered because lots
+     * of little writes get done to it.
+     * @param out is the stream to write to.
+     */
+    public BinaryWriter(OutputStream out) {
+        this.out = new DataOutputStream(out);
+    }
+
+    /**
+     * Sets the thing that gets told each time a whole layout has been written.
+     * @param listener is the listener, which can be null.
+     */
+    public void setListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Tells the listener that a whole layout has been written, if there is a
+     * listener.
+     * @param layout is the layout that is done.
+     */
+    public void layoutDone(Layout layout) {
+        if (this.listener != null) this.listener.layoutDone(layout);
+    }
+
+    /**
+     * Tells you whether the leaves of each layout are being written to
+     * separate segment files.
+     * @return true if they are.
+     */
+    public boolean isSplit() {
+        return this.split;
+    }
+
+    /**
+     * Sets whether the leaves of each layout get written to separate segment
+     * files.
+     * @param split is whether to split them.
+     */
+    public void setSplit(boolean split) {
+        this.split = split;
+    }
+
+    /**
+     * Records that a segment file is used by the game being written, so it
+     * doesn't get deleted by removeUnusedSegments.
+     * @param segment is the name of the segment file.
+     */
+    public void useSegment(String segment) {
+        this.segments.add(segment);
+    }
+
+    /**
+     * Deletes all the segment files in a game's segment folder that were not
+     * used by what has been written, which would be left over from layouts
+     * that have been deleted or from before the game stopped being split
+     * up. If that leaves the folder empty then it is deleted too.
+     * @param file is the path to the game file.
+     * @throws IOException if the folder can't be listed or a file can't be
+     *                     deleted.
+     */
+    public void removeUnusedSegments(Path file) throws IOException {
+        Path folder = BinaryWriter.getSegmentFolder(file);
+        if (!Files.isDirectory(folder)) return;
+        String extension = "." + BinaryWriter.SEGMENT_EXTENSION;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+            for (Path entry: entries) {
+                String name = entry.getFileName().toString();
+                if (name.endsWith(extension) &&
+                    !this.segments.contains(name)
+                ) {
+                    Files.delete(entry);
+                }
+            }
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+            if (entries.iterator().hasNext()) return;
+        }
+        Files.delete(folder);
+    }
+
+    /**
+     * Gives you the folder that a game file's segment files go in, which is
+     * next to it with the same name plus the segment folder suffix.
+     * @param file is the path to the game file.
+     * @return the path to the folder.
+     */
+    public static Path getSegmentFolder(Path file) {
+        return file.resolveSibling(String.format(
+            "%s.%s",
+            file.getFileName(),
+            BinaryWriter.SEGMENT_FOLDER
+        ));
+    }
+
+    /**
+     * Tells you if a file name ends with the binary format's extension.
+     * @param name is the file name.
+     * @return true iff it's meant to be a binary game file.
+     */
+    public static boolean isBinaryName(String name) {
+        return name.toLowerCase().endsWith("." + BinaryWriter.EXTENSION);
+    }
+
+    /**
+     * Writes the magic bytes and version number that go at the start of a
+     * binary game file.
+     * @throws IOException if the writing fails.
+     */
+    public void writeHeader() throws IOException {
+        this.out.write(BinaryWriter.MAGIC);
+        this.writeVarint(BinaryWriter.VERSION);
+    }
+
+    /**
+     * Writes a whole number that is not negative using as few bytes as it
+     * needs, seven bits at a time.
+     * @param value is the number to write.
+     * @throws IOException if the writing fails.
+     */
+    public void writeVarint(int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            this.out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        this.out.writeByte(value);
+    }
+
+    /**
+     * Writes a float.
+     * @param value is the float to write.
+     * @throws IOException if the writing fails.
+     */
+    public void writeFloat(float value) throws IOException {
+        this.out.writeFloat(value);
+    }
+
+    /**
+     * Writes a boolean as a single byte.
+     * @param value is the boolean.
+     * @throws IOException if the writing fails.
+     */
+    public void writeBoolean(boolean value) throws IOException {
+        this.out.writeBoolean(value);
+    }
+
+    /**
+     * Writes a string. If the same string has been written already then it
+     * just writes the number it got last time, otherwise it writes a zero
+     * and then the string's length and utf-8 bytes.
+     * @param value is the string which must not be null.
+     * @throws IOException if the writing fails.
+     */
+    public void writeString(String value) throws IOException {
+        Integer index = this.strings.get(value);
+        if (index != null) {
+            this.writeVarint(index + 1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        this.writeVarint(0);
+        this.writeVarint(bytes.length);
+        this.out.write(bytes);
+        this.strings.put(value, this.strings.size());
+    }
+
+    /**
+     * Writes a block of bytes with it's length in front.
+     * @param bytes is the bytes to write.
+     * @throws IOException if the writing fails.
+     */
+    public void writeBlock(byte[] bytes) throws IOException {
+        this.writeVarint(bytes.length);
+        this.out.write(bytes);
+    }
+
+    /**
+     * Writes a leaf and everything below it as a block that can be read on
+     * it's own, with it's own table of strings.
+     * @param leaf is the leaf to write.
+     * @param root is the path to the main game file.
+     * @throws IOException if the writing fails.
+     */
+    public void writeLeafBlock(Leaf leaf, Path root) throws IOException {
+        this.writeBlock(BinaryWriter.leafBlock(leaf, root));
+    }
+
+    /**
+     * Writes a leaf and all of it's children into a block of their own that
+     * can be read on it's own by BinaryReader.readLeafBlock.
+     * @param leaf is the leaf to write.
+     * @param root is the path to the main game file.
+     * @return the bytes of the block.
+     * @throws IOException if the writing fails.
+     */
+    public static byte[] leafBlock(Leaf leaf, Path root) throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        BinaryWriter writer = new BinaryWriter(block);
+        leaf.write(writer, root);
+        writer.flush();
+        return block.toByteArray();
+    }
+
+    /**
+     * Writes out whatever is waiting to be written.
+     * @throws IOException if the writing fails.
+     */
+    public void flush() throws IOException {
+        this.out.flush();
+    }
+}
@@ -0,0 +1,125 @@
+package peony;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An output stream that writes to a file channel through one big direct
+ * buffer, so that the bytes get handed to the operating system in large
+ * chunks without being copied again on the way. It can also force everything
+ * that has been written out to the disk, which is what makes saving safe.
+ */
+public class ChannelOutputStream extends OutputStream {
+    public static final int BUFFER_SIZE = 1 << 20;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates the stream with the default buffer size.
+     * @param channel is the channel to write to, which gets closed when the
+     *                stream is closed.
+     */
+    public ChannelOutputStream(FileChannel channel) {
+        this(channel, ChannelOutputStream.BUFFER_SIZE);
+    }
+
+    /**
+     * Creates the stream.
+     * @param channel is the channel to write to.
+     * @param size    is the size of the buffer in bytes.
+     */
+    public ChannelOutputStream(FileChannel channel, int size) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * Opens a file for writing to from the start, creating it if it is not
+     * there already.
+     * @param file is the file to open.
+     * @return the stream.
+     * @throws IOException if the file can't be opened.
+     */
+    public static ChannelOutputStream open(Path file) throws IOException {
+        return new ChannelOutputStream(FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING
+        ));
+    }
+
+    /**
+     * Writes a whole file that must not exist yet in one go and forces it
+     * out to the disk before returning.
+     * @param file  is the file to write.
+     * @param bytes is what to put in it.
+     * @throws IOException if the file already exists or the writing fails.
+     */
+    public static void write(Path file, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(
+            file,
+            StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.WRITE
+        )) {
+            ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+            while (wrapped.hasRemaining()) channel.write(wrapped);
+            channel.force(true);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!this.buffer.hasRemaining()) this.drain();
+        this.buffer.put((byte)b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!this.buffer.hasRemaining()) this.drain();
+            int n = Math.min(length, this.buffer.remaining());
+            this.buffer.put(bytes, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.drain();
+    }
+
+    /**
+     * Writes out everything in the buffer and then makes the file's contents
+     * actually go to the disk, so that they survive a crash.
+     * @throws IOException if it fails.
+     */
+    public void force() throws IOException {
+        this.drain();
+        this.channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.drain();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Writes everything that is in the buffer to the channel and empties it.
+     * @throws IOException if the writing fails.
+     */
+    private void drain() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) this.channel.write(this.buffer);
+        this.buffer.clear();
+    }
+}
@@ -6,21 +6,33 @@ import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
 import javax.swing.tree.TreeModel;
 import javax.swing.tree.TreePath;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Represents an overall game.
  */
 public class Game implements Artefact, TreeModel {
+    public static final int DEFAULT_MAX_LOADED = 16;
     private final List<TreeModelListener> treeModelListeners = new ArrayList<>();
     private String name;
     private String version;
     private TextureAtlas textureAtlas;
     private Map<String, String> options;
     private final Layout firstLayout;
+    private final Map<Layout, Boolean> used = new LinkedHashMap<>(
+        16,
+        0.75f,
+        true
+    );
+    private int maxLoaded = Game.DEFAULT_MAX_LOADED;
 
     /**
      * Default constructor.
@@ -92,7 +104,100 @@ public class Game implements Artefact, TreeModel {
     }
 
     /**
-     * Moves a layout around in the tree of layouts.
+     * Makes a copy of the game and all of it's layouts and leaves that can
+     * be saved on another thread while this one keeps on getting edited. The
+     * texture atlas is shared since it doesn't get changed in place.
+     * @return the copy.
+     */
+    public Game copy() {
+        return new Game(
+            this.name,
+            this.version,
+            this.firstLayout.copy(),
+            this.textureAtlas
+        );
+    }
+
+    /**
+     * Gives you the number of layouts that can have their leaves loaded at
+     * once before the ones that were used longest ago get unloaded.
+     * @return the maximum number of loaded layouts.
+     */
+    public int getMaxLoaded() {
+        return this.maxLoaded;
+    }
+
+    /**
+     * Sets the number of layouts that can be loaded at once.
+     * @param maxLoaded is the maximum number of loaded layouts.
+     */
+    public void setMaxLoaded(int maxLoaded) {
+        this.maxLoaded = maxLoaded;
+    }
+
+    /**
+     * Makes sure a layout's leaves are loaded because it is about to be
+     * used, and then unloads the layouts that were used longest ago if there
+     * are too many loaded. Layouts whose leaves have been changed can't be
+     * unloaded, so they stay loaded no matter what. Layouts that have been
+     * taken out of the game are forgotten about and unloaded if they can be.
+     * @param layout is the layout being used.
+     */
+    public void use(Layout layout) {
+        layout.load();
+        this.used.put(layout, true);
+        Iterator<Layout> iterator = this.used.keySet().iterator();
+        while (iterator.hasNext()) {
+            Layout old = iterator.next();
+            if (old != layout && !this.contains(old)) {
+                old.unload();
+                iterator.remove();
+            }
+        }
+        iterator = this.used.keySet().iterator();
+        while (this.used.size() > this.maxLoaded && iterator.hasNext()) {
+            Layout old = iterator.next();
+            if (old != layout && old.unload()) iterator.remove();
+        }
+    }
+
+    /**
+     * Tells you whether a layout is in this game's tree of layouts.
+     * @param layout is the layout to look for.
+     * @return true if it is in there.
+     */
+    public boolean contains(Layout layout) {
+        while (layout.getParent() != null) layout = layout.getParent();
+        return layout == this.firstLayout;
+    }
+
+    /**
+     * Tells you whether the game is split up into segment files, which is
+     * when any of it's layouts had their leaves read from or written to a
+     * segment file.
+     * @return true if it is split up.
+     */
+    public boolean isSplit() {
+        return Game.isSplit(this.firstLayout);
+    }
+
+    /**
+     * Tells you whether a layout or any of it's children have their leaves
+     * in a segment file.
+     * @param layout is the layout to look at.
+     * @return true if one of them does.
+     */
+    private static boolean isSplit(Layout layout) {
+        if (layout.hasSegment()) return true;
+        for (Layout child: layout.getChildren()) {
+            if (Game.isSplit(child)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves a layout around in the tree of layouts. If one of it's new
+     * siblings has the same name it gets a number on the end.
      * @param path   is the path to where it must get inserted.
      * @param layout is the thing to insert.
      * @param index  is the index at which to add this layout.
@@ -104,26 +209,12 @@ public class Game implements Artefact, TreeModel {
         int index
     ) {
         Layout parent = (Layout)path.getLastPathComponent();
-        layout.setParent(parent);
-        if (index == -1) {
-            parent.getChildren().add(layout);
-        } else {
-            parent.getChildren().add(index, layout);
-        }
-        if (from == parent) {
-            int i = 0;
-            int kill = -1;
-            for (Layout child: from.getChildren()) {
-                if (child == layout && i != index) {
-                    kill = i;
-                    break;
-                }
-                i++;
-            }
-            if (kill >= 0) from.getChildren().remove(kill);
-        } else if (from != null) {
-            from.getChildren().remove(layout);
+        if (from != null) {
+            int old = from.getChildren().indexOf(layout);
+            from.removeChild(layout);
+            if (from == parent && old != -1 && old < index) index--;
         }
+        parent.addChild(index, layout);
         this.changeEvent(this.firstLayout);
     }
 
@@ -202,6 +293,211 @@ public class Game implements Artefact, TreeModel {
         return Result.fail(layout.message());
     }
 
+    /**
+     * Reads a game from a json reader that is up to the game object, making
+     * the layouts as it goes rather than loading the whole file as json
+     * first. The leaves of each layout get built on other threads while the
+     * rest is read, unless the reader is lazy, and if the rest turns out to
+     * be broken then the layouts that were read are abandoned.
+     * @param in   is the json reader.
+     * @param root is the path to the folder the game file is in.
+     * @return result with the game on success.
+     */
+    public static Result<Game> read(JsonReader in, Path root) {
+        List<Layout> layouts = new ArrayList<>();
+        try {
+            Result<Game> game = Game.read(in, root, layouts);
+            if (!game.success()) {
+                for (Layout layout: layouts) layout.abandonBuilding();
+            }
+            return game;
+        } catch (RuntimeException e) {
+            for (Layout layout: layouts) layout.abandonBuilding();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a game from a json reader, putting the layouts into a list as
+     * they are read so that they can be abandoned if it fails.
+     * @param in      is the json reader.
+     * @param root    is the path to the folder the game file is in.
+     * @param layouts is the list to put the layouts in.
+     * @return result with the game on success.
+     */
+    private static Result<Game> read(
+        JsonReader in,
+        Path root,
+        List<Layout> layouts
+    ) {
+        String name = null;
+        String version = null;
+        Layout layout = null;
+        TextureAtlas atlas = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "name":
+                    name = in.nextString();
+                    break;
+                case "version":
+                    version = in.nextString();
+                    break;
+                case "layout":
+                    Result<Layout> layoutResult = Layout.read(in, root);
+                    if (!layoutResult.success()) {
+                        return Result.fail(layoutResult.message());
+                    }
+                    layout = layoutResult.value();
+                    layouts.add(layout);
+                    break;
+                case "atlas":
+                    Object atlasJson = in.nextValue();
+                    if (!(atlasJson instanceof JSONObject)) {
+                        return Result.fail("Invalid json for game object.");
+                    }
+                    Result<TextureAtlas> atlasResult = TextureAtlas.fromJson(
+                        (JSONObject)atlasJson,
+                        root
+                    );
+                    if (!atlasResult.success()) {
+                        return Result.fail(atlasResult.message());
+                    }
+                    atlas = atlasResult.value();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        if (name == null || version == null || layout == null) {
+            return Result.fail("Invalid json for game object.");
+        }
+        if (!in.isLazy()) {
+            Result<Void> built = layout.finishBuilding();
+            if (!built.success()) return Result.fail(built.message());
+        }
+        return Result.ok(new Game(name, version, layout, atlas));
+    }
+
+    @Override
+    public void write(JsonWriter out, Path root) throws IOException {
+        out.beginObject();
+        out.name("name").value(this.name);
+        out.name("version").value(this.version);
+        out.name("layout");
+        this.firstLayout.write(out, root);
+        if (this.textureAtlas != null) {
+            out.name("atlas");
+            this.textureAtlas.write(out, root);
+        }
+        out.endObject();
+    }
+
+    /**
+     * Writes the game out in the binary format, including the header. The
+     * texture atlas is just written as it's json since it's tiny.
+     * @param out  is the binary writer.
+     * @param root is the path to the game file.
+     * @throws IOException if the writing fails.
+     */
+    public void write(BinaryWriter out, Path root) throws IOException {
+        out.writeHeader();
+        out.writeString(this.name);
+        out.writeString(this.version);
+        out.writeBoolean(this.textureAtlas != null);
+        if (this.textureAtlas != null) {
+            out.writeString(this.textureAtlas.toJson(root).toString());
+        }
+        this.firstLayout.write(out, root);
+    }
+
+    /**
+     * Tells you whether anything in the game has changed since it was last
+     * saved or loaded.
+     * @return true if something has changed.
+     */
+    public boolean isDirty() {
+        return Game.isDirty(this.firstLayout);
+    }
+
+    /**
+     * Marks all of the game's layouts as saved. See Layout.markSaved for
+     * what happens when the game is a snapshot.
+     */
+    public void markSaved() {
+        this.firstLayout.markSaved();
+    }
+
+    /**
+     * Tells you whether a layout or any of the layouts below it have
+     * changed.
+     * @param layout is the layout to start from.
+     * @return true if any of them have changed.
+     */
+    private static boolean isDirty(Layout layout) {
+        if (layout.isDirty()) return true;
+        for (Layout child: layout.getChildren()) {
+            if (Game.isDirty(child)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads a game that was written in the binary format. The leaves of each
+     * layout get built on other threads while the rest is read, unless the
+     * reader is lazy.
+     * @param in   is the binary reader.
+     * @param root is the folder the game file is in.
+     * @return result with the game on success.
+     * @throws IOException if the reading fails or it's not a binary game.
+     */
+    public static Result<Game> read(
+        BinaryReader in,
+        Path root
+    ) throws IOException {
+        in.readHeader();
+        String name = in.readString();
+        String version = in.readString();
+        TextureAtlas atlas = null;
+        if (in.readBoolean()) {
+            Result<TextureAtlas> atlasResult = TextureAtlas.fromJson(
+                new JSONObject(in.readString()),
+                root
+            );
+            if (!atlasResult.success()) {
+                return Result.fail(atlasResult.message());
+            }
+            atlas = atlasResult.value();
+        }
+        Result<Layout> layout = Layout.read(in, root);
+        if (!layout.success()) return Result.fail(layout.message());
+        if (!in.isLazy()) {
+            Result<Void> built = layout.value().finishBuilding();
+            if (!built.success()) return Result.fail(built.message());
+        }
+        return Result.ok(new Game(name, version, layout.value(), atlas));
+    }
+
+    /**
+     * Reads the names of the segment files that a game in the binary format
+     * uses, without reading anything else.
+     * @param in is the binary reader.
+     * @return the names of the segment files.
+     * @throws IOException if the reading fails or it's not a binary game.
+     */
+    public static Set<String> readSegments(
+        BinaryReader in
+    ) throws IOException {
+        in.readHeader();
+        in.readString();
+        in.readString();
+        if (in.readBoolean()) in.readString();
+        Set<String> segments = new HashSet<>();
+        Layout.readSegments(in, segments);
+        return segments;
+    }
+
     @Override
     public JSONObject toJson(Path root) {
         JSONObject json = new JSONObject();
@@ -0,0 +1,495 @@
+package peony;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps decoded images around so that everything that uses the same image
+ * file shares one copy of it. Images are kept under a budget of bytes, and
+ * when it is gone over the ones used least recently that nobody has a
+ * handle to get thrown away. Images that still have handles are never
+ * thrown away, since they are probably on the screen and would just get
+ * decoded again straight away, so if those are bigger than the budget the
+ * cache goes over it until some get released. Files are told apart by their
+ * real path and when they were last modified, so if a file changes on disk
+ * it gets loaded fresh. Decoding happens on the common pool, and if lots of
+ * things want the same image at once it still only gets decoded once.
+ * Images are kept as mipmaps so the smaller versions of them go in the
+ * cache too, and they are counted as being a third bigger to allow for
+ * that. Decoded images get converted into the format that the screen uses
+ * before they go in so that drawing them is just a copy.
+ */
+public class ImageCache {
+    public static final long DEFAULT_BUDGET = 256L << 20;
+    private static final ImageCache shared = new ImageCache(
+        ImageCache.DEFAULT_BUDGET
+    );
+
+    /**
+     * Identifies a version of an image file.
+     */
+    private static class Key {
+        final Path path;
+        final long modified;
+
+        /**
+         * Creates the key.
+         * @param path     is the real path to the file.
+         * @param modified is when the file was last modified in milliseconds.
+         */
+        Key(Path path, long modified) {
+            this.path = path;
+            this.modified = modified;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key key = (Key)other;
+            return this.path.equals(key.path) && this.modified == key.modified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.path, this.modified);
+        }
+    }
+
+    /**
+     * What is stored for each image file. The image is null until it has
+     * finished decoding. If decoding it failed then that is remembered so it
+     * doesn't get tried again and again.
+     */
+    private static class Entry {
+        Mipmap image;
+        CompletableFuture<Mipmap> loading;
+        boolean failed = false;
+        long bytes;
+        int width;
+        int height;
+        int refs = 0;
+    }
+
+    /**
+     * A reference to an image in the cache. Hang on to it for as long as you
+     * want the image and then release it.
+     */
+    public class Handle {
+        private final Key key;
+        private final int width;
+        private final int height;
+        private boolean released = false;
+        private CompletableFuture<Mipmap> waiting = null;
+
+        /**
+         * Creates the handle. Only the cache makes them.
+         * @param key   is the key of the image it is for.
+         * @param entry is the entry the image is in right now.
+         */
+        private Handle(Key key, Entry entry) {
+            this.key = key;
+            this.width = entry.width;
+            this.height = entry.height;
+        }
+
+        /**
+         * Gives you the image's mipmap, waiting for it to be decoded if it
+         * isn't already.
+         * @return the mipmap or null if it can't be decoded.
+         */
+        public Mipmap get() {
+            return ImageCache.this.load(this.key).join();
+        }
+
+        /**
+         * Gives you the image if it is decoded right now, and otherwise
+         * makes sure it is being decoded and gives you null. If decoding it
+         * has already failed then it just gives you null.
+         * @param ready is run on whatever thread did the decoding once the
+         *              image is there, if this returns null. It only gets
+         *              run once however many times you ask while waiting,
+         *              and not at all if the decoding fails.
+         * @return the image's mipmap or null if it is not decoded yet.
+         */
+        public Mipmap getNow(Runnable ready) {
+            Mipmap image = ImageCache.this.peek(this.key);
+            if (image != null) return image;
+            if (this.waiting == null || this.waiting.isDone()) {
+                this.waiting = ImageCache.this.load(this.key);
+                this.waiting.thenAccept(loaded -> {
+                    if (loaded != null) ready.run();
+                });
+            }
+            return null;
+        }
+
+        /**
+         * Gives you the width of the image without needing it decoded.
+         * @return the width in pixels.
+         */
+        public int getWidth() {
+            return this.width;
+        }
+
+        /**
+         * Gives you the height of the image without needing it decoded.
+         * @return the height in pixels.
+         */
+        public int getHeight() {
+            return this.height;
+        }
+
+        /**
+         * Gives you the real path of the image's file.
+         * @return the path.
+         */
+        public Path getPath() {
+            return this.key.path;
+        }
+
+        /**
+         * Says that you don't need the image anymore so it can be thrown
+         * away first. Releasing twice does nothing.
+         */
+        public void release() {
+            if (this.released) return;
+            this.released = true;
+            ImageCache.this.release(this.key);
+        }
+    }
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(
+        16,
+        0.75f,
+        true
+    );
+    private volatile boolean convert = true;
+    private long budget;
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Creates an image cache.
+     * @param budget is how many bytes of images it can hold.
+     */
+    public ImageCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Gives you the cache that the whole program shares.
+     * @return the shared cache.
+     */
+    public static ImageCache getShared() {
+        return ImageCache.shared;
+    }
+
+    /**
+     * Gets a handle to an image file, decoding it if it is not in the cache.
+     * @param file is the image file.
+     * @return a result containing the handle or an error.
+     */
+    public Result<Handle> acquire(Path file) {
+        Result<Handle> handle = this.acquireLater(file);
+        if (!handle.success()) return handle;
+        if (handle.value().get() == null) {
+            handle.value().release();
+            return Result.fail("Couldn't decode image %s", file);
+        }
+        return handle;
+    }
+
+    /**
+     * Gets a handle to an image file straight away and starts decoding it
+     * in the background if it is not in the cache. Only the header of the
+     * file gets read first so that the handle knows how big the image is.
+     * @param file is the image file.
+     * @return a result containing the handle or an error if the file is not
+     *         there or does not have a header that can be understood.
+     */
+    public Result<Handle> acquireLater(Path file) {
+        Key key;
+        try {
+            key = new Key(
+                file.toRealPath(),
+                Files.getLastModifiedTime(file).toMillis()
+            );
+        } catch (IOException e) {
+            return Result.fail("Couldn't open image %s: %s", file, e);
+        }
+        synchronized (this) {
+            Entry entry = this.entries.get(key);
+            if (entry != null) {
+                if (entry.image != null) this.hits++;
+                entry.refs++;
+                this.load(key);
+                return Result.ok(new Handle(key, entry));
+            }
+        }
+        Result<Point> size = ImageCache.readSize(key.path);
+        if (!size.success()) return Result.fail("%s", size.message());
+        synchronized (this) {
+            Entry entry = this.entries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                entry.width = (int)size.value().getX();
+                entry.height = (int)size.value().getY();
+                this.entries.put(key, entry);
+            }
+            entry.refs++;
+            this.load(key);
+            return Result.ok(new Handle(key, entry));
+        }
+    }
+
+    /**
+     * Tells you how many bytes of images the cache can hold.
+     * @return the budget in bytes.
+     */
+    public synchronized long getBudget() {
+        return this.budget;
+    }
+
+    /**
+     * Sets how many bytes of images the cache can hold, throwing some away
+     * if it is already holding more than that.
+     * @param budget is the new budget in bytes.
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        this.evict();
+    }
+
+    /**
+     * Tells you whether decoded images are converted into the format that
+     * the screen uses.
+     * @return true if they are.
+     */
+    public boolean isConvert() {
+        return this.convert;
+    }
+
+    /**
+     * Sets whether decoded images get converted into the format that the
+     * screen uses. It only affects images decoded after it is set, and you
+     * would only turn it off to see how much it helps.
+     * @param convert is whether to convert them.
+     */
+    public void setConvert(boolean convert) {
+        this.convert = convert;
+    }
+
+    /**
+     * Tells you how many bytes of images are in the cache right now.
+     * @return the number of bytes.
+     */
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Tells you how many times an image was wanted and was already there.
+     * @return the number of hits.
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Tells you how many times an image was wanted and had to be decoded.
+     * @return the number of misses.
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Tells you how many images something is holding a handle to.
+     * @return the number of held images.
+     */
+    public synchronized int getHeld() {
+        int held = 0;
+        for (Entry entry: this.entries.values()) {
+            if (entry.refs > 0) held++;
+        }
+        return held;
+    }
+
+    /**
+     * Works out roughly how many bytes an image takes up.
+     * @param image is the image.
+     * @return the number of bytes.
+     */
+    public static long sizeOf(Image image) {
+        long pixels = (long)image.getWidth(null) * image.getHeight(null);
+        if (image instanceof BufferedImage) {
+            int bits = ((BufferedImage)image).getColorModel().getPixelSize();
+            return pixels * Math.max(1, (bits + 7) / 8);
+        }
+        return pixels * 4;
+    }
+
+    /**
+     * Decodes an image file, and converts it into the screen's format if the
+     * cache is set to do that.
+     * @param file is the file.
+     * @return a result containing the image or an error.
+     */
+    private Result<Image> decode(Path file) {
+        try {
+            Image image = ImageIO.read(file.toFile());
+            if (image == null) return Result.fail("Not an image: %s", file);
+            if (this.convert) image = Mipmap.toCompatible(image);
+            return Result.ok(image);
+        } catch (IOException e) {
+            return Result.fail("Couldn't read image %s: %s", file, e);
+        }
+    }
+
+    /**
+     * Reads just the width and height of an image from it's header.
+     * @param file is the image file.
+     * @return a result containing the size or an error.
+     */
+    private static Result<Point> readSize(Path file) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(
+            file.toFile()
+        )) {
+            Iterator<ImageReader> readers = in == null ?
+                null :
+                ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                return Result.fail("Not an image: %s", file);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return Result.ok(
+                    new Point(reader.getWidth(0), reader.getHeight(0))
+                );
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            return Result.fail("Couldn't read image %s: %s", file, e);
+        }
+    }
+
+    /**
+     * Gives you the image for a key if it is decoded right now.
+     * @param key is the key.
+     * @return the image or null.
+     */
+    private synchronized Mipmap peek(Key key) {
+        Entry entry = this.entries.get(key);
+        return entry == null ? null : entry.image;
+    }
+
+    /**
+     * Gives you the image for a key, starting to decode it on the common
+     * pool if it isn't decoded and nobody else has started it yet. Once it
+     * has failed to decode it is not tried again.
+     * @param key is the key.
+     * @return the image that will be, which is null if it can't be decoded.
+     */
+    private synchronized CompletableFuture<Mipmap> load(Key key) {
+        Entry entry = this.entries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            this.entries.put(key, entry);
+        }
+        if (entry.image != null || entry.failed) {
+            return CompletableFuture.completedFuture(entry.image);
+        }
+        if (entry.loading == null || entry.loading.isDone()) {
+            Entry loading = entry;
+            entry.loading = CompletableFuture.supplyAsync(
+                () -> this.decode(key.path)
+            ).thenApply(image -> this.finish(key, loading, image));
+        }
+        return entry.loading;
+    }
+
+    /**
+     * Puts an image that has just been decoded into it's entry, as long as
+     * the entry is still in the cache.
+     * @param key   is the key of the entry.
+     * @param entry is the entry.
+     * @param image is the decoded image or an error.
+     * @return the image or null if it failed.
+     */
+    private synchronized Mipmap finish(
+        Key key,
+        Entry entry,
+        Result<Image> image
+    ) {
+        this.misses++;
+        if (!image.success()) {
+            System.err.println(image.message());
+            entry.failed = true;
+            return null;
+        }
+        Mipmap mipmap = new Mipmap(image.value());
+        if (this.entries.get(key) != entry) return mipmap;
+        if (entry.image == null) {
+            this.store(entry, mipmap);
+            this.evict();
+        }
+        return entry.image;
+    }
+
+    /**
+     * Takes away one of the handles to an image, and if that was the last
+     * one then it can be thrown away if the cache is over budget. Entries
+     * for images that failed to decode are kept so that they are not tried
+     * again.
+     * @param key is the image's key.
+     */
+    private synchronized void release(Key key) {
+        Entry entry = this.entries.get(key);
+        if (entry == null) return;
+        entry.refs--;
+        if (entry.refs > 0) return;
+        if (entry.image == null && !entry.failed) this.entries.remove(key);
+        else this.evict();
+    }
+
+    /**
+     * Puts an image into an entry.
+     * @param entry is the entry.
+     * @param image is the image.
+     */
+    private void store(Entry entry, Mipmap image) {
+        entry.image = image;
+        entry.bytes = ImageCache.sizeOf(image.getImage()) * 4 / 3;
+        entry.width = image.getWidth();
+        entry.height = image.getHeight();
+        this.bytes += entry.bytes;
+    }
+
+    /**
+     * Throws away the least recently used images that have no handles until
+     * the cache is within budget or there are none of them left.
+     */
+    private void evict() {
+        Iterator<Entry> iterator = this.entries.values().iterator();
+        while (this.bytes > this.budget && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.image == null || entry.refs > 0) continue;
+            this.bytes -= entry.bytes;
+            iterator.remove();
+        }
+    }
+}
@@ -3,7 +3,7 @@ package peony;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import javax.imageio.ImageIO;
+import javax.swing.*;
 import java.awt.*;
 import java.awt.image.ImageObserver;
 import java.io.File;
@@ -11,13 +11,16 @@ import java.io.IOException;
 import java.nio.file.Path;
 
 /**
- * A leaf that consists of a whole image file.
+ * A leaf that consists of a whole image file. The image itself lives in the
+ * shared image cache so that leaves using the same file share it. It gets
+ * decoded in the background, and until it is ready the leaf draws a little
+ * placeholder while still being the right size for clicking on.
  */
 public class ImageLeaf extends Leaf {
     public static final String TITLE = "image";
     public static final int SELECT_RADIUS = 16;
     private File file;
-    private Image image;
+    private ImageCache.Handle image;
 
     /**
      * Default constructor.
@@ -27,18 +30,26 @@ public class ImageLeaf extends Leaf {
     }
 
     /**
-     * Sets the file and image that this image leaf uses.
+     * Sets the file and image that this image leaf uses. Only the image's
+     * header is read before this returns and the rest gets decoded in the
+     * background.
      * @param file is the file to set.
      */
     public void setFile(File file) {
-        this.file = file;
-        try {
-            this.image = ImageIO.read(file);
-        } catch (IOException e) {
-            System.err.println(e.getMessage());
+        if (this.image != null) this.image.release();
+        Result<ImageCache.Handle> image = ImageCache.getShared().acquireLater(
+            file.toPath()
+        );
+        if (image.success()) {
+            this.file = file;
+            this.image = image.value();
+            this.image.getNow(this::imageReady);
+        } else {
+            System.err.println(image.message());
             this.file = null;
             this.image = null;
         }
+        this.invalidateBounds();
     }
 
     /**
@@ -60,21 +71,44 @@ public class ImageLeaf extends Leaf {
         return Result.ok(leaf);
     }
 
+    /**
+     * Gets called on a background thread once the image has been decoded,
+     * and tells the layout to redraw the leaf on the event thread.
+     */
+    private void imageReady() {
+        SwingUtilities.invokeLater(() -> {
+            Layout layout = this.getLayout();
+            if (layout != null) layout.redrawn(this);
+        });
+    }
+
     @Override
     public boolean insideLocal(Point point) {
         if (this.image == null) return point.length() < ImageLeaf.SELECT_RADIUS;
-        return Renderer.getDimensions(this.image).contains(point);
+        return this.getLocalBounds().contains(point);
+    }
+
+    @Override
+    protected Rectangle calculateLocalBounds() {
+        if (this.image == null) {
+            return new Rectangle(new Point(ImageLeaf.SELECT_RADIUS * 2));
+        }
+        return new Rectangle(
+            new Point(this.image.getWidth(), this.image.getHeight())
+        );
     }
 
     @Override
     public void renderParticular(Renderer r) {
         this.normalColour(r);
-        if (this.image != null) {
-            r.drawImage(this.image);
-            if (r.isLeafSelected(this)) {
-                r.drawRectangle(Renderer.getDimensions(this.image));
-            }
+        if (this.image == null) return;
+        Mipmap image = this.image.getNow(this::imageReady);
+        if (image != null) {
+            r.drawImage(image);
+        } else {
+            r.drawCircle(new Point(), ImageLeaf.SELECT_RADIUS);
         }
+        if (r.isLeafSelected(this)) r.drawRectangle(this.getLocalBounds());
     }
 
     @Override
@@ -83,6 +117,64 @@ public class ImageLeaf extends Leaf {
         return "image";
     }
 
+    @Override
+    protected Leaf copyParticular() {
+        ImageLeaf copy = new ImageLeaf();
+        copy.file = this.file;
+        // The copy shares the handle rather than taking another one since
+        // copies are only snapshots and nothing ever releases them.
+        copy.image = this.image;
+        return copy;
+    }
+
+    @Override
+    protected void releaseParticular() {
+        if (this.image != null) this.image.release();
+    }
+
+    @Override
+    protected void writeFields(JsonWriter out, Path root) throws IOException {
+        out.name("type").value(ImageLeaf.TITLE);
+        if (this.file != null) {
+            Path imagePath = this.file.toPath();
+            Path relative = root.getParent().relativize(imagePath);
+            out.name("file").value(relative.toString());
+        }
+    }
+
+    @Override
+    protected void writeFields(
+        BinaryWriter out,
+        Path root
+    ) throws IOException {
+        out.writeString(ImageLeaf.TITLE);
+        out.writeBoolean(this.file != null);
+        if (this.file != null) {
+            Path imagePath = this.file.toPath();
+            Path relative = root.getParent().relativize(imagePath);
+            out.writeString(relative.toString());
+        }
+    }
+
+    /**
+     * Reads the particular stuff of an image leaf from the binary format.
+     * @param in   is the binary reader.
+     * @param root is the folder the game file is in.
+     * @return the new leaf.
+     * @throws IOException if the reading fails.
+     */
+    public static Result<Leaf> read(
+        BinaryReader in,
+        Path root
+    ) throws IOException {
+        ImageLeaf leaf = new ImageLeaf();
+        if (in.readBoolean()) {
+            Path imagePath = root.resolve(Path.of(in.readString()));
+            leaf.setFile(imagePath.toFile());
+        }
+        return Result.ok(leaf);
+    }
+
     @Override
     public JSONObject toJson(Path root) {
         JSONObject json = super.toJson(root);
@@ -0,0 +1,316 @@
+package peony;
+
+import org.json.JSONException;
+import org.json.JSONTokener;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Reads json one bit at a time from a stream rather than loading the whole
+ * thing into memory at once. You go through it by calling beginObject,
+ * nextName, the next value methods and so on in the order that stuff appears
+ * in the file. When you get to a bit that is small and you don't care to
+ * read piece by piece you can call nextValue to get it as a normal json
+ * object. It uses the org.json tokener underneath so strings and numbers are
+ * understood in exactly the same way as everywhere else. Any problem with
+ * the json gets thrown as a JSONException.
+ */
+public class JsonReader implements Closeable {
+    /**
+     * Keeps track of where we are up to in an object or array.
+     */
+    private static class Scope {
+        final boolean array;
+        boolean first = true;
+        boolean ready = false;
+        boolean named = false;
+
+        /**
+         * Creates the scope.
+         * @param array is whether it is an array and not an object.
+         */
+        Scope(boolean array) {
+            this.array = array;
+        }
+    }
+
+    private final Deque<Scope> scopes = new ArrayDeque<>();
+    private final Reader reader;
+    private final JSONTokener tokener;
+    private ProgressListener listener = null;
+    private boolean lazy = false;
+
+    /**
+     * Creates a json reader that reads from a reader. It should be buffered
+     * because the tokener needs to be able to go back a character.
+     * @param reader is the reader to read from.
+     */
+    public JsonReader(Reader reader) {
+        this.reader = reader;
+        this.tokener = new JSONTokener(reader);
+    }
+
+    /**
+     * Creates a json reader that reads from a utf-8 file.
+     * @param file is the file to read.
+     * @throws IOException if the file can't be opened.
+     */
+    public JsonReader(File file) throws IOException {
+        this(Files.newBufferedReader(file.toPath()));
+    }
+
+    /**
+     * Sets the thing that gets told each time a whole layout has been read.
+     * @param listener is the listener, which can be null.
+     */
+    public void setListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Tells you whether layouts should be read lazily, which means their
+     * leaves are kept in the form they were read in and only get built when
+     * the layout is actually used.
+     * @return true if they should be lazy.
+     */
+    public boolean isLazy() {
+        return this.lazy;
+    }
+
+    /**
+     * Sets whether layouts should be read lazily.
+     * @param lazy is whether they should be lazy.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Tells the listener that a whole layout has been read, if there is a
+     * listener.
+     * @param layout is the layout that is done.
+     */
+    public void layoutDone(Layout layout) {
+        if (this.listener != null) this.listener.layoutDone(layout);
+    }
+
+    /**
+     * Reads the start of an object.
+     */
+    public void beginObject() {
+        this.beforeValue();
+        this.expect('{');
+        this.scopes.push(new Scope(false));
+    }
+
+    /**
+     * Reads the end of an object, which has to be the next thing.
+     */
+    public void endObject() {
+        this.end(false, '}');
+    }
+
+    /**
+     * Reads the start of an array.
+     */
+    public void beginArray() {
+        this.beforeValue();
+        this.expect('[');
+        this.scopes.push(new Scope(true));
+    }
+
+    /**
+     * Reads the end of an array, which has to be the next thing.
+     */
+    public void endArray() {
+        this.end(true, ']');
+    }
+
+    /**
+     * Tells you if there is another member in the current object or another
+     * element in the current array.
+     * @return true if there is more and false if the end is next.
+     */
+    public boolean hasNext() {
+        Scope scope = this.scopes.peek();
+        if (scope == null) {
+            throw this.tokener.syntaxError("Not in an object or array");
+        }
+        char c = this.tokener.nextClean();
+        if (c == '}' || c == ']' || c == 0) {
+            this.tokener.back();
+            return false;
+        }
+        if (scope.ready || scope.first) {
+            this.tokener.back();
+        } else if (c != ',') {
+            throw this.tokener.syntaxError(String.format(
+                "Expected a ',' or '%c'",
+                scope.array ? ']' : '}'
+            ));
+        }
+        scope.ready = true;
+        return true;
+    }
+
+    /**
+     * Reads the name of the next member of the current object.
+     * @return the name.
+     */
+    public String nextName() {
+        Scope scope = this.scopes.peek();
+        if (scope == null || scope.array) {
+            throw this.tokener.syntaxError("Expected a value not a name");
+        }
+        this.advance();
+        char c = this.tokener.nextClean();
+        if (c != '"' && c != '\'') {
+            throw this.tokener.syntaxError("Expected a name");
+        }
+        String name = this.tokener.nextString(c);
+        this.expect(':');
+        scope.named = true;
+        return name;
+    }
+
+    /**
+     * Reads the next value whatever it is, and if it is an object or an
+     * array then it reads all of that too and gives it to you in one piece.
+     * @return the value which is going to be a JSONObject, JSONArray, String,
+     *         Boolean, Number or JSONObject.NULL.
+     */
+    public Object nextValue() {
+        this.beforeValue();
+        return this.tokener.nextValue();
+    }
+
+    /**
+     * Reads the next value and throws it away.
+     */
+    public void skipValue() {
+        this.nextValue();
+    }
+
+    /**
+     * Reads the next value as a string.
+     * @return the string.
+     */
+    public String nextString() {
+        Object value = this.nextValue();
+        if (value instanceof String) return (String)value;
+        throw this.tokener.syntaxError(String.format(
+            "Expected a string but got %s",
+            value
+        ));
+    }
+
+    /**
+     * Reads the next value as a float, and it can be a number or a string
+     * with a number in it.
+     * @return the number.
+     */
+    public float nextFloat() {
+        Object value = this.nextValue();
+        if (value instanceof Number) return ((Number)value).floatValue();
+        if (value instanceof String) {
+            try {
+                return Float.parseFloat((String)value);
+            } catch (NumberFormatException e) {
+                // falls through to the error below.
+            }
+        }
+        throw this.tokener.syntaxError(String.format(
+            "Expected a number but got %s",
+            value
+        ));
+    }
+
+    /**
+     * Reads the next value as a boolean, and it can be a real boolean or
+     * a string saying true or false.
+     * @return the boolean.
+     */
+    public boolean nextBoolean() {
+        Object value = this.nextValue();
+        if (value instanceof Boolean) return (Boolean)value;
+        if ("true".equalsIgnoreCase(value.toString())) return true;
+        if ("false".equalsIgnoreCase(value.toString())) return false;
+        throw this.tokener.syntaxError(String.format(
+            "Expected a boolean but got %s",
+            value
+        ));
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+    /**
+     * Gets ready to read a value, which means making sure that we are at
+     * the next element if in an array, or that we have just read a name if
+     * in an object.
+     */
+    private void beforeValue() {
+        Scope scope = this.scopes.peek();
+        if (scope == null) return;
+        if (scope.array) {
+            this.advance();
+        } else if (scope.named) {
+            scope.named = false;
+        } else {
+            throw this.tokener.syntaxError("Expected a name not a value");
+        }
+    }
+
+    /**
+     * Moves on to the next member or element of the current scope, which
+     * there has to be.
+     */
+    private void advance() {
+        Scope scope = this.scopes.peek();
+        if (!scope.ready && !this.hasNext()) {
+            throw this.tokener.syntaxError("Unexpected end of object or array");
+        }
+        scope.ready = false;
+        scope.first = false;
+    }
+
+    /**
+     * Reads the end of the current scope.
+     * @param array  is whether the scope should be an array.
+     * @param closer is the character that ends the scope.
+     */
+    private void end(boolean array, char closer) {
+        Scope scope = this.scopes.peek();
+        if (scope == null || scope.array != array || scope.named) {
+            throw this.tokener.syntaxError(String.format(
+                "Unexpected '%c'",
+                closer
+            ));
+        }
+        this.expect(closer);
+        this.scopes.pop();
+    }
+
+    /**
+     * Reads the next character that is not whitespace and makes sure it is
+     * the expected one.
+     * @param expected is the character it has to be.
+     */
+    private void expect(char expected) {
+        char c = this.tokener.nextClean();
+        if (c != expected) {
+            throw this.tokener.syntaxError(String.format(
+                "Expected '%c'",
+                expected
+            ));
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package peony;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Writes json straight out to a stream one bit at a time so that the whole
+ * document never has to exist in memory at once. It is the opposite of
+ * JsonReader, and strings and numbers get written by the same org.json
+ * functions that JSONObject uses so the output looks the same as toString
+ * would give you.
+ */
+public class JsonWriter {
+    private final Deque<Boolean> first = new ArrayDeque<>();
+    private final Writer writer;
+    private boolean named = false;
+    private ProgressListener listener = null;
+
+    /**
+     * Creates the json writer. The writer you give it should be buffered
+     * since lots of small writes get done to it.
+     * @param writer is the writer to write to.
+     */
+    public JsonWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Sets the thing that gets told each time a whole layout has been written.
+     * @param listener is the listener, which can be null.
+     */
+    public void setListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Tells the listener that a whole layout has been written, if there is a
+     * listener.
+     * @param layout is the layout that is done.
+     */
+    public void layoutDone(Layout layout) {
+        if (this.listener != null) this.listener.layoutDone(layout);
+    }
+
+    /**
+     * Writes the start of an object.
+     * @return this json writer so you can chain calls.
+     * @throws IOException if the writing fails.
+     */
+    public JsonWriter beginObject() throws IOException {
+        this.beforeValue();
+        this.writer.write('{');
+        this.first.push(true);
+        return this;
+    }
+
+    /**
+     * Writes the end of an object.
+     * @return this json writer.
+     * @throws IOException if the writing fails.
+     */
+    public JsonWriter endObject() throws IOException {
+        this.first.pop();
+        this.writer.write('}');
+        return this;
+    }
+
+    /**
+     * Writes the start of an array.
+     * @return this json writer.
+     * @throws IOException if the writing fails.
+     */
+    public JsonWriter beginArray() throws IOException {
+        this.beforeValue();
+        this.writer.write('[');
+        this.first.push(true);
+        return this;
+    }
+
+    /**
+     * Writes the end of an array.
+     * @return this json writer.
+     * @throws IOException if the writing fails.
+     */
+    public JsonWriter endArray() throws IOException {
+        this.first.pop();
+        this.writer.write(']');
+        return this;
+    }
+
+    /**
+     * Writes the name of the next member of the current object.
+     * @param name is the name.
+     * @return this json writer.
+     * @throws IOException if the writing fails.
+     */
+    public JsonWriter name(String name) throws IOException {
+        this.separate();
+        this.writer.write(JSONObject.quote(name));
+        this.writer.write(':');
+        this.named = true;
+        return this;
+    }
+
+    /**
+     * Writes a string value.
+     * @param value is the string which can be null.
+     * @return this json writer.
+     * @throws IOException if the writing fails.
+     */
+    public JsonWriter value(String value) throws IOException {
+        this.beforeValue();
+        this.writer.write(value == null ? "null" : JSONObject.quote(value));
+        return this;
+    }
+
+    /**
+     * Writes a number value.
+     * @param value is the number.
+     * @return this json writer.
+     * @throws IOException if the writing fails.
+     */
+    public JsonWriter value(float value) throws IOException {
+        this.beforeValue();
+        this.writer.write(JSONObject.numberToString(value));
+        return this;
+    }
+
+    /**
+     * Writes a boolean value.
+     * @param value is the boolean.
+     * @return this json writer.
+     * @throws IOException if the writing fails.
+     */
+    public JsonWriter value(boolean value) throws IOException {
+        this.beforeValue();
+        this.writer.write(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Writes any value that a JSONObject could have in it, including whole
+     * json objects and arrays.
+     * @param value is the value to write.
+     * @return this json writer.
+     * @throws IOException if the writing fails.
+     */
+    public JsonWriter value(Object value) throws IOException {
+        this.beforeValue();
+        this.writer.write(JSONObject.valueToString(value));
+        return this;
+    }
+
+    /**
+     * Writes whatever is waiting to be written out to the underlying writer.
+     * @throws IOException if the writing fails.
+     */
+    public void flush() throws IOException {
+        this.writer.flush();
+    }
+
+    /**
+     * Gets ready to write a value, which means putting in a comma if it is
+     * not the first thing in an array.
+     * @throws IOException if the writing fails.
+     */
+    private void beforeValue() throws IOException {
+        if (this.named) {
+            this.named = false;
+        } else if (!this.first.isEmpty()) {
+            this.separate();
+        }
+    }
+
+    /**
+     * Puts a comma in unless we are at the start of an object or array.
+     * @throws IOException if the writing fails.
+     */
+    private void separate() throws IOException {
+        if (this.first.pop()) {
+            this.first.push(false);
+        } else {
+            this.first.push(false);
+            this.writer.write(',');
+        }
+    }
+}
@@ -8,22 +8,111 @@ import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
 import javax.swing.tree.TreeModel;
 import javax.swing.tree.TreePath;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * One layout thingy
  */
 public class Layout implements Artefact, TreeModel {
+    /**
+     * Builds a layout from json, with each of it's child layouts being built
+     * by another one of these that gets forked off. The children are joined
+     * in order so they end up in the same order as in the json, and if more
+     * than one of them fails you get the error of the first.
+     */
+    private static class FromJson extends RecursiveTask<Result<Layout>> {
+        private static final long serialVersionUID = 1L;
+        private final JSONObject json;
+        private final Path path;
+
+        /**
+         * Creates the task.
+         * @param json is the json for the layout.
+         * @param path is the path to the game file.
+         */
+        FromJson(JSONObject json, Path path) {
+            this.json = json;
+            this.path = path;
+        }
+
+        @Override
+        protected Result<Layout> compute() {
+            String name;
+            JSONObject rootJson;
+            JSONArray children;
+            try {
+                name = this.json.getString("name");
+                rootJson = this.json.getJSONObject("root");
+                children = this.json.getJSONArray("children");
+            } catch (JSONException e) {
+                return Result.fail("Invalid json for layout object.");
+            }
+            List<FromJson> tasks = new ArrayList<>(children.length());
+            for (int i = 0; i < children.length(); i++) {
+                JSONObject child = children.optJSONObject(i);
+                if (child == null) {
+                    return Result.fail("Invalid json for layout object.");
+                }
+                tasks.add(new FromJson(child, this.path));
+            }
+            for (FromJson task: tasks) task.fork();
+            Result<Leaf> root = Leaf.fromJson(rootJson, this.path);
+            Result<Layout> failure = null;
+            if (!root.success()) failure = Result.fail(root.message());
+            List<Layout> built = new ArrayList<>(tasks.size());
+            for (FromJson task: tasks) {
+                Result<Layout> child = task.join();
+                if (failure != null) continue;
+                if (child.success()) built.add(child.value());
+                else failure = child;
+            }
+            if (failure != null) return failure;
+            Layout layout = new Layout(name, root.value());
+            if (this.json.has("script")) {
+                layout.setScript(this.json.getString("script"));
+            }
+            for (Layout child: built) layout.addChild(child);
+            layout.markClean();
+            return Result.ok(layout);
+        }
+    }
+
     private List<TreeModelListener> treeModelListeners = new ArrayList<>();
+    private final SpatialIndex index = new SpatialIndex(this);
     private String name;
     private String script;
     private Leaf root;
     private List<Layout> children;
+    private final Map<String, Layout> names = new HashMap<>();
+    private final Map<String, Integer> counters = new HashMap<>();
     private Layout parent;
+    private int modifications = 0;
+    private int edits = 0;
+    private int savedModifications = 0;
+    private int savedEdits = 0;
+    private int sourceModifications = 0;
+    private int segmentModifications = 0;
+    private String segment = null;
+    private Path segmentPath = null;
+    private Layout original = null;
+    private byte[] sourceBlock = null;
+    private JSONObject sourceJson = null;
+    private Path sourcePath = null;
+    private String error = null;
+    private ForkJoinTask<Result<Leaf>> building = null;
 
     /**
      * default constructor which sets it how it should be if the program is
@@ -35,6 +124,8 @@ public class Layout implements Artefact, TreeModel {
         this.root = new ImageLeaf();
         this.root.setName("root");
         this.root.setLocked(true);
+        this.root.setLayout(this);
+        this.index.markSubtree(this.root);
     }
 
     /**
@@ -46,6 +137,8 @@ public class Layout implements Artefact, TreeModel {
         this.children = new ArrayList<>();
         this.root = new PointLeaf();
         this.root.setName("root");
+        this.root.setLayout(this);
+        this.index.markSubtree(this.root);
     }
 
     /**
@@ -56,6 +149,241 @@ public class Layout implements Artefact, TreeModel {
         this.children = new ArrayList<>();
         this.name = name;
         this.root = root;
+        this.root.setLayout(this);
+        this.index.markSubtree(this.root);
+    }
+
+    /**
+     * Creates a layout whose leaves have not been built yet. They are kept
+     * in the form they were read in and get built the first time they are
+     * needed. Only one of the block and the json should be given.
+     * @param name  is the name to give the layout.
+     * @param block is the leaf block from the binary format or null.
+     * @param json  is the json for the root leaf or null.
+     * @param path  is the folder the game file is in.
+     */
+    private Layout(String name, byte[] block, JSONObject json, Path path) {
+        this.children = new ArrayList<>();
+        this.name = name;
+        this.sourceBlock = block;
+        this.sourceJson = json;
+        this.sourcePath = path;
+    }
+
+    /**
+     * Creates a layout whose leaves are in a leaf block from the binary
+     * format, and don't get built until they are needed.
+     * @param name  is the name of the layout.
+     * @param block is the leaf block.
+     * @param path  is the folder the game file is in.
+     * @return the layout.
+     */
+    public static Layout lazy(String name, byte[] block, Path path) {
+        return new Layout(name, block, null, path);
+    }
+
+    /**
+     * Creates a layout whose leaves are in a json object, and don't get built
+     * until they are needed.
+     * @param name is the name of the layout.
+     * @param json is the json for the root leaf.
+     * @param path is the folder the game file is in.
+     * @return the layout.
+     */
+    public static Layout lazy(String name, JSONObject json, Path path) {
+        return new Layout(name, null, json, path);
+    }
+
+    /**
+     * Tells you whether the layout's leaves have been built.
+     * @return true if they have.
+     */
+    public boolean isLoaded() {
+        return this.root != null;
+    }
+
+    /**
+     * Gives you the error from the last time the layout's leaves were built
+     * if it failed.
+     * @return the error message, or null if they built fine.
+     */
+    public String getError() {
+        return this.error;
+    }
+
+    /**
+     * Builds the layout's leaves if they have not been built yet. If they
+     * can't be built then the layout gets an empty root so it can still be
+     * looked at, and the error is kept so it can be shown with getError.
+     * The empty root is never written out in place of the real leaves, so
+     * writing the layout fails unless the source can be written instead.
+     * @return the root leaf.
+     */
+    public Leaf load() {
+        if (this.root == null) {
+            Result<Leaf> built = this.build();
+            if (built.success()) {
+                this.root = built.value();
+                this.error = null;
+            } else {
+                this.root = new PointLeaf();
+                this.root.setName("root");
+                this.error = built.message();
+            }
+            this.root.setLayout(this);
+            this.index.markSubtree(this.root);
+            this.sourceModifications = this.modifications;
+        }
+        return this.root;
+    }
+
+    /**
+     * Starts building the leaves of a layout that has just been read on the
+     * common fork join pool, so they get built on the other cores while the
+     * rest of the file is still being read. finishBuilding puts them in.
+     */
+    private void startBuilding() {
+        this.building = ForkJoinPool.commonPool().submit(this::build);
+    }
+
+    /**
+     * Waits for the leaves of this layout and all of it's children that were
+     * started building while they were read, and puts them in. After that
+     * they are just like layouts that were not lazy, so what the leaves were
+     * built from is let go of. If any of them failed then you get the error
+     * of the first one in the file and none of them keep their leaves.
+     * @return nothing, or the error.
+     */
+    public Result<Void> finishBuilding() {
+        Result<Void> result = this.joinBuilding();
+        if (!result.success()) this.releaseBuilt();
+        return result;
+    }
+
+    /**
+     * Waits for the leaves of this layout and it's children to be built and
+     * puts in the ones that worked.
+     * @return nothing, or the error of the first one that failed.
+     */
+    private Result<Void> joinBuilding() {
+        Result<Void> result = Result.ok();
+        if (this.building != null) {
+            Result<Leaf> built = this.building.join();
+            this.building = null;
+            if (built.success()) {
+                this.root = built.value();
+                this.root.setLayout(this);
+                this.index.markSubtree(this.root);
+                this.sourceBlock = null;
+                this.sourceJson = null;
+            } else {
+                result = Result.fail(built.message());
+            }
+        }
+        for (Layout child: this.children) {
+            Result<Void> childResult = child.joinBuilding();
+            if (result.success()) result = childResult;
+        }
+        return result;
+    }
+
+    /**
+     * Waits for the leaves of this layout and it's children that were
+     * started building while they were read and lets go of them, for when
+     * the rest of the file turned out to be broken so they are never going
+     * to be used.
+     */
+    public void abandonBuilding() {
+        this.joinBuilding();
+        this.releaseBuilt();
+    }
+
+    /**
+     * Lets go of the images of the leaves that finishBuilding put into this
+     * layout and it's children, since the game they are in is not going to
+     * be used.
+     */
+    private void releaseBuilt() {
+        if (this.root != null) this.root.release();
+        for (Layout child: this.children) child.releaseBuilt();
+    }
+
+    /**
+     * Throws away the layout's leaves so they stop taking up memory, which
+     * is only allowed if they were lazily loaded and they haven't been
+     * changed since, so that they can be built again exactly the same. The
+     * images the leaves were using are let go of as well.
+     * @return true if the leaves are not loaded anymore.
+     */
+    public boolean unload() {
+        if (this.root == null) return true;
+        if (!this.isUnchanged()) return false;
+        this.root.release();
+        this.root.setLayout(null);
+        this.root = null;
+        this.index.clear();
+        return true;
+    }
+
+    /**
+     * Tells you whether the layout's leaves were read from or written to a
+     * segment file of their own.
+     * @return true if they were.
+     */
+    public boolean hasSegment() {
+        return this.segmentPath != null;
+    }
+
+    /**
+     * Gives you the number of times the layout's leaves have been changed.
+     * @return the number of changes.
+     */
+    public int getModifications() {
+        return this.modifications;
+    }
+
+    /**
+     * Records that something about the layout's leaves has changed. The
+     * leaves call this themselves.
+     */
+    public void modified() {
+        this.modifications++;
+    }
+
+    /**
+     * Records that something about the layout itself has changed, like it's
+     * name, script or child layouts.
+     */
+    public void edited() {
+        this.edits++;
+    }
+
+    /**
+     * Tells you whether the layout or any of it's leaves have changed since
+     * it was last saved or loaded.
+     * @return true if it has changed.
+     */
+    public boolean isDirty() {
+        return this.modifications != this.savedModifications ||
+            this.edits != this.savedEdits;
+    }
+
+    /**
+     * Marks this layout and all of it's children as saved. If they are a
+     * snapshot made by copy then it is the layouts they were copied from
+     * that get marked, and only as far as they were when the copy was made,
+     * so anything changed while the save was going on is still dirty.
+     */
+    public void markSaved() {
+        Layout target = this.original != null ? this.original : this;
+        target.savedModifications = this.modifications;
+        target.savedEdits = this.edits;
+        if (this.segmentPath != null) {
+            target.segment = this.segment;
+            target.segmentPath = this.segmentPath;
+            target.segmentModifications = this.segmentModifications;
+        }
+        for (Layout child: this.children) child.markSaved();
     }
 
     /**
@@ -81,7 +409,10 @@ public class Layout implements Artefact, TreeModel {
      * @param name the name.
      */
     public void setName(String name) {
+        if (this.parent != null) this.parent.unindex(this);
         this.name = name;
+        if (this.parent != null) this.parent.index(this);
+        this.edited();
     }
 
     /**
@@ -98,10 +429,13 @@ public class Layout implements Artefact, TreeModel {
      */
     public void setScript(String script) {
         this.script = script;
+        this.edited();
     }
 
     /**
-     * Gives you all the layout's children.
+     * Gives you all the layout's children. Don't add or remove children
+     * through it since then they won't be found by name, use addChild and
+     * removeChild.
      * @return the children list.
      */
     public List<Layout> getChildren() {
@@ -114,10 +448,7 @@ public class Layout implements Artefact, TreeModel {
      * @return the child layout if found or null.
      */
     public Layout getChildByName(String name) {
-        for (Layout child: this.children) {
-            if (child.getName().equals(name)) return child;
-        }
-        return null;
+        return this.names.get(name);
     }
 
     /**
@@ -127,7 +458,42 @@ public class Layout implements Artefact, TreeModel {
      */
     public void addChild(Layout child) {
         this.children.add(child);
+        this.index(child);
+        child.setParent(this);
+        this.edited();
+    }
+
+    /**
+     * Adds a child layout at a given place among the other children, and
+     * gives it a number on the end of it's name if another child already
+     * has that name.
+     * @param index is where to put it, or -1 to put it at the end.
+     * @param child is the child to add.
+     */
+    public void addChild(int index, Layout child) {
         child.setParent(this);
+        if (index == -1) {
+            this.children.add(child);
+        } else {
+            this.children.add(index, child);
+        }
+        child.setName(this.uniqueName(child.getName(), child));
+        this.edited();
+    }
+
+    /**
+     * Takes a child layout away from this layout. It's parent is left alone
+     * since it is normally about to get added somewhere else.
+     * @param child is the child to remove.
+     * @return true if it was a child of this layout.
+     */
+    public boolean removeChild(Layout child) {
+        int index = this.children.indexOf(child);
+        if (index == -1) return false;
+        this.unindex(child);
+        this.children.remove(index);
+        this.edited();
+        return true;
     }
 
     /**
@@ -135,19 +501,57 @@ public class Layout implements Artefact, TreeModel {
      * @return the created child for you to use if you want.
      */
     public Layout createChild() {
-        String base = "layout";
-        String name = base;
-        for (int i = 1; i < Integer.MAX_VALUE; i++) {
-            Layout existing = this.getChildByName(name);
-            if (existing == null) {
-                Layout child = new Layout(name);
-                child.setParent(this);
-                this.children.add(child);
-                return child;
+        Layout child = new Layout(this.uniqueName("layout", null));
+        this.addChild(child);
+        return child;
+    }
+
+    /**
+     * Works out a name for a child that none of the other children have. If
+     * the name is taken then it gets the next number for that name stuck on
+     * the end, and the number is remembered so the next one doesn't have to
+     * count up from 1 again.
+     * @param name  is the name it wants.
+     * @param child is the child that wants it, or null for a new one.
+     * @return the name it can have.
+     */
+    private String uniqueName(String name, Layout child) {
+        Layout owner = this.names.get(name);
+        if (owner == null || owner == child) return name;
+        int i = this.counters.getOrDefault(name, 1);
+        String test;
+        do {
+            test = String.format("%s%d", name, i);
+            i++;
+        } while (this.names.containsKey(test));
+        this.counters.put(name, i);
+        return test;
+    }
+
+    /**
+     * Adds a child to the name index, unless another child already has the
+     * name.
+     * @param child is the child to add which is already in the child list.
+     */
+    private void index(Layout child) {
+        this.names.putIfAbsent(child.name, child);
+    }
+
+    /**
+     * Takes a child out of the name index. If there are other children with
+     * the same name then the first of them goes in instead.
+     * @param child is the child to take out which is still in the child
+     *              list.
+     */
+    private void unindex(Layout child) {
+        if (!this.names.remove(child.name, child)) return;
+        if (this.names.size() >= this.children.size() - 1) return;
+        for (Layout other: this.children) {
+            if (other != child && other.name.equals(child.name)) {
+                this.names.put(other.name, other);
+                return;
             }
-            name = String.format("%s%d", base, i);
         }
-        return null;
     }
 
     /**
@@ -166,6 +570,125 @@ public class Layout implements Artefact, TreeModel {
         this.parent = parent;
     }
 
+    /**
+     * Makes a copy of the layout with copies of all of it's leaves and child
+     * layouts in it. The copy has no parent and no listeners. If the leaves
+     * are unchanged since they were read then the copy just shares where they
+     * were read from and doesn't build them.
+     * @return the copy.
+     */
+    public Layout copy() {
+        Layout copy = this.isUnchanged() ?
+            new Layout(
+                this.name,
+                this.sourceBlock,
+                this.sourceJson,
+                this.sourcePath
+            ) :
+            new Layout(this.name, this.root.copy());
+        copy.setScript(this.script);
+        for (Layout child: this.children) copy.addChild(child.copy());
+        copy.original = this.original != null ? this.original : this;
+        copy.modifications = this.modifications;
+        copy.edits = this.edits;
+        copy.savedModifications = this.savedModifications;
+        copy.savedEdits = this.savedEdits;
+        copy.sourceModifications = this.sourceModifications;
+        copy.segmentModifications = this.segmentModifications;
+        copy.segment = this.segment;
+        copy.segmentPath = this.segmentPath;
+        copy.error = this.error;
+        return copy;
+    }
+
+    /**
+     * Marks just this layout as not having changed, which is for when it has
+     * just been loaded.
+     */
+    private void markClean() {
+        this.savedModifications = this.modifications;
+        this.savedEdits = this.edits;
+    }
+
+    /**
+     * Tells you whether the leaves of this layout are still exactly what was
+     * read from the file, meaning there is a source to build them from and
+     * they have not been changed since.
+     * @return true if they are unchanged.
+     */
+    private boolean isUnchanged() {
+        return (this.sourceBlock != null || this.sourceJson != null) &&
+            this.modifications == this.sourceModifications;
+    }
+
+    /**
+     * Tells you whether the source of the leaves can be written straight
+     * back out to a game file without building them. Image paths in it are
+     * relative to the folder it was read from, so it has to be the same one.
+     * @param path is the path to the game file being written.
+     * @return true if the source can be written as it is.
+     */
+    private boolean canWriteSource(Path path) {
+        return this.isUnchanged() &&
+            path.getParent() != null &&
+            path.getParent().equals(this.sourcePath);
+    }
+
+    /**
+     * Builds a new copy of the leaves from the source.
+     * @return the new root leaf, or the error if it can't be built.
+     */
+    private Result<Leaf> build() {
+        Result<Leaf> built;
+        if (this.sourceJson != null) {
+            built = Leaf.fromJson(this.sourceJson, this.sourcePath);
+        } else {
+            try {
+                built = BinaryReader.readLeafBlock(
+                    this.sourceBlock,
+                    this.sourcePath
+                );
+            } catch (IOException e) {
+                built = Result.fail(e.getMessage());
+            }
+        }
+        return built;
+    }
+
+    /**
+     * Gives you the root leaf for writing the layout out. If the leaves are
+     * not loaded then a copy is built just for that and not kept, so writing
+     * a snapshot never changes anything.
+     * @return the root leaf.
+     * @throws IOException if the leaves can't be built, or they could not be
+     *                     built when they were loaded so the root is just a
+     *                     stand in.
+     */
+    private Leaf peekRoot() throws IOException {
+        if (this.root != null) {
+            if (this.error != null) {
+                throw new IOException(String.format(
+                    "Layout %s was not loaded properly: %s",
+                    this.getFullName(),
+                    this.error
+                ));
+            }
+            return this.root;
+        }
+        Result<Leaf> built = this.build();
+        if (!built.success()) throw new IOException(built.message());
+        return built.value();
+    }
+
+    /**
+     * Lets go of a root leaf that came from peekRoot once it has been
+     * written, if it was built just for that.
+     * @param root is the root leaf from peekRoot.
+     */
+    private void unpeekRoot(Leaf root) {
+        if (root != this.root) root.release();
+    }
+
     /**
      * Gives you the full treepath to this layout through the heirachy it
      * exists in.
@@ -182,7 +705,29 @@ public class Layout implements Artefact, TreeModel {
     }
 
     /**
-     * Moves a leaf from one place to another in the tree of leaves.
+     * Gives you the index that keeps track of where this layout's leaves are.
+     * @return the spatial index.
+     */
+    public SpatialIndex getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Finds the leaf at a point in world space. It gives the same answer as
+     * calling hit on the root leaf, but only looks at leaves that are near
+     * the point.
+     * @param point is the point to look at in world space.
+     * @return the leaf that was hit and the point in it that was hit, both of
+     *         which might be null.
+     */
+    public Pair<Leaf, Point> hit(Point point) {
+        this.load();
+        return this.index.hit(point);
+    }
+
+    /**
+     * Moves a leaf from one place to another in the tree of leaves. If one
+     * of it's new siblings has the same name it gets a number on the end.
      * @param from  is the place to move it out of.
      * @param path  is the new path from the root to the leaf.
      * @param leaf  is the leaf we are moving.
@@ -195,27 +740,13 @@ public class Layout implements Artefact, TreeModel {
         int index
     ) {
         Leaf parent = (Leaf)path.getLastPathComponent();
-        leaf.setParent(parent);
-        if (index == -1) {
-            parent.getChildren().add(leaf);
-        } else {
-            parent.getChildren().add(index, leaf);
-        }
-        if (from == parent) {
-            int i = 0;
-            int kill = -1;
-            for (Leaf child: from.getChildren()) {
-                if (child == leaf && i != index) {
-                    kill = i;
-                    break;
-                }
-                i++;
-            }
-            if (kill >= 0) from.getChildren().remove(kill);
-        } else if (from != null) {
-            from.getChildren().remove(leaf);
+        if (from != null) {
+            int old = from.getChildren().indexOf(leaf);
+            from.removeChild(leaf);
+            if (from == parent && old != -1 && old < index) index--;
         }
-        this.changed(this.root);
+        parent.addChild(index, leaf);
+        this.changed(this.load());
     }
 
     /**
@@ -224,6 +755,7 @@ public class Layout implements Artefact, TreeModel {
      * @param leaf is the leaf that changed.
      */
     public void changed(Leaf leaf) {
+        this.modified();
         TreeModelEvent event = new TreeModelEvent(
             this,
             leaf.getLineage()
@@ -234,35 +766,124 @@ public class Layout implements Artefact, TreeModel {
     }
 
     /**
-     * Creates a map from a json object.
+     * Tells the listeners that a leaf looks different even though nothing
+     * about it has actually changed, like when it's image finishes loading,
+     * so this doesn't count as a modification.
+     * @param leaf is the leaf that needs drawing again.
+     */
+    public void redrawn(Leaf leaf) {
+        Leaf parent = leaf.getParent();
+        TreeModelEvent event = parent == null ?
+            new TreeModelEvent(this, leaf.getLineage()) :
+            new TreeModelEvent(
+                this,
+                parent.getLineage(),
+                new int[]{parent.getChildren().indexOf(leaf)},
+                new Object[]{leaf}
+            );
+        for (TreeModelListener listener: this.treeModelListeners) {
+            listener.treeNodesChanged(event);
+        }
+    }
+
+    /**
+     * Creates a map from a json object. Each child layout is built in it's
+     * own task on the common fork join pool since they have nothing to do
+     * with each other until they are linked up at the end, so big games get
+     * loaded on all the cores at once.
      * @param json is the json object to use.
      * @param path is the path to the game file.
      * @return the map in a result unless the json is malformed in which case
      *          you are gonna get an error.
      */
     public static Result<Layout> fromJson(JSONObject json, Path path) {
-        String name;
-        JSONObject rootJson;
-        JSONArray children;
+        return ForkJoinPool.commonPool().invoke(new FromJson(json, path));
+    }
+
+    /**
+     * Reads a layout and all of it's child layouts from a json reader that
+     * is up to a layout object. The json for the leaves is read into a json
+     * object, and unless the reader is lazy they start getting built from
+     * that on another thread straight away. Game.read waits for them with
+     * finishBuilding once the whole file has been read. If the json turns
+     * out to be broken part way through then the child layouts that were
+     * already read are abandoned.
+     * @param in   is the json reader.
+     * @param path is the path to the game file.
+     * @return the layout in a result unless the json is malformed.
+     */
+    public static Result<Layout> read(JsonReader in, Path path) {
+        List<Layout> children = new ArrayList<>();
         try {
-            name = json.getString("name");
-            rootJson = json.getJSONObject("root");
-            children = json.getJSONArray("children");
-        } catch (JSONException e) {
-            return Result.fail("Invalid json for layout object.");
+            Result<Layout> layout = Layout.read(in, path, children);
+            if (!layout.success()) {
+                for (Layout child: children) child.abandonBuilding();
+            }
+            return layout;
+        } catch (RuntimeException e) {
+            for (Layout child: children) child.abandonBuilding();
+            throw e;
         }
-        Result<Leaf> root = Leaf.fromJson(rootJson, path);
-        if (!root.success()) return Result.fail(root.message());
-        Layout layout = new Layout(name, root.value());
-        if (json.has("script")) layout.setScript(json.getString("script"));
-        for (int i = 0; i < children.length(); i++) {
-            Result<Layout> child = Layout.fromJson(
-                children.getJSONObject(i),
-                path
-            );
-            if (child.success()) layout.addChild(child.value());
-            else return Result.fail(child.message());
+    }
+
+    /**
+     * Reads a layout from a json reader, putting the child layouts into a
+     * list as they are read so that they can be abandoned if it fails.
+     * @param in       is the json reader.
+     * @param path     is the path to the game file.
+     * @param children is the list to put the child layouts in.
+     * @return the layout in a result unless the json is malformed.
+     */
+    private static Result<Layout> read(
+        JsonReader in,
+        Path path,
+        List<Layout> children
+    ) {
+        String name = null;
+        String script = null;
+        JSONObject rootJson = null;
+        boolean hasChildren = false;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "name":
+                    name = in.nextString();
+                    break;
+                case "script":
+                    Object value = in.nextValue();
+                    if (value instanceof String) script = (String)value;
+                    break;
+                case "root":
+                    Object json = in.nextValue();
+                    if (!(json instanceof JSONObject)) {
+                        return Result.fail("Invalid json for layout object.");
+                    }
+                    rootJson = (JSONObject)json;
+                    break;
+                case "children":
+                    hasChildren = true;
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        Result<Layout> child = Layout.read(in, path);
+                        if (!child.success()) return child;
+                        children.add(child.value());
+                    }
+                    in.endArray();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        if (name == null || rootJson == null || !hasChildren) {
+            return Result.fail("Invalid json for layout object.");
         }
+        Layout layout = Layout.lazy(name, rootJson, path);
+        if (!in.isLazy()) layout.startBuilding();
+        layout.setScript(script);
+        for (Layout child: children) layout.addChild(child);
+        layout.markClean();
+        in.layoutDone(layout);
         return Result.ok(layout);
     }
 
@@ -271,13 +892,212 @@ public class Layout implements Artefact, TreeModel {
         return name;
     }
 
+    @Override
+    public void write(JsonWriter out, Path path) throws IOException {
+        out.beginObject();
+        out.name("name").value(this.name);
+        if (this.script != null) out.name("script").value(this.script);
+        out.name("root");
+        if (this.sourceJson != null && this.canWriteSource(path)) {
+            out.value(this.sourceJson);
+        } else {
+            Leaf root = this.peekRoot();
+            try {
+                root.write(out, path);
+            } finally {
+                this.unpeekRoot(root);
+            }
+        }
+        out.name("children").beginArray();
+        for (Layout child: this.children) child.write(out, path);
+        out.endArray();
+        out.endObject();
+        out.layoutDone(this);
+    }
+
+    /**
+     * Writes the layout and all of it's children out in the binary format.
+     * The leaves are written as a block on their own so they can be read
+     * separately from the rest.
+     * @param out  is the binary writer.
+     * @param path is the path to the game file.
+     * @throws IOException if the writing fails.
+     */
+    public void write(BinaryWriter out, Path path) throws IOException {
+        out.writeString(this.name);
+        out.writeBoolean(this.script != null);
+        if (this.script != null) out.writeString(this.script);
+        if (out.isSplit()) {
+            this.writeSegment(out, path);
+        } else {
+            out.writeBoolean(false);
+            if (this.sourceBlock != null && this.canWriteSource(path)) {
+                out.writeBlock(this.sourceBlock);
+            } else {
+                Leaf root = this.peekRoot();
+                try {
+                    out.writeLeafBlock(root, path);
+                } finally {
+                    this.unpeekRoot(root);
+                }
+            }
+        }
+        out.writeVarint(this.children.size());
+        for (Layout child: this.children) child.write(out, path);
+        out.layoutDone(this);
+    }
+
+    /**
+     * Writes a reference to the segment file that has this layout's leaves
+     * in it. The segment file itself only gets written if the leaves have
+     * changed since it was last written, or it is not in the right folder.
+     * A segment file is never written over, instead the new one gets a new
+     * name, so the old game file still works until the new one replaces it.
+     * @param out  is the binary writer.
+     * @param path is the path to the game file.
+     * @throws IOException if the writing fails.
+     */
+    private void writeSegment(
+        BinaryWriter out,
+        Path path
+    ) throws IOException {
+        Path folder = BinaryWriter.getSegmentFolder(path);
+        if (this.segment == null ||
+            !folder.resolve(this.segment).equals(this.segmentPath) ||
+            this.segmentModifications != this.modifications ||
+            !Files.exists(this.segmentPath)
+        ) {
+            byte[] block;
+            if (this.sourceBlock != null && this.canWriteSource(path)) {
+                block = this.sourceBlock;
+            } else {
+                Leaf root = this.peekRoot();
+                try {
+                    block = BinaryWriter.leafBlock(root, path);
+                } finally {
+                    this.unpeekRoot(root);
+                }
+            }
+            this.segment = String.format(
+                "%s.%s",
+                UUID.randomUUID(),
+                BinaryWriter.SEGMENT_EXTENSION
+            );
+            Files.createDirectories(folder);
+            ChannelOutputStream.write(folder.resolve(this.segment), block);
+            this.segmentPath = folder.resolve(this.segment);
+            this.segmentModifications = this.modifications;
+        }
+        out.writeBoolean(true);
+        out.writeString(String.format(
+            "%s/%s",
+            folder.getFileName(),
+            this.segment
+        ));
+        out.useSegment(this.segment);
+    }
+
+    /**
+     * Reads a layout and all of it's children from the binary format. Unless
+     * the reader is lazy the leaves start getting built on another thread as
+     * soon as their block has been read, and Game.read waits for them with
+     * finishBuilding once the whole file has been read. If reading the
+     * children fails then this layout and the children that were already
+     * read are abandoned.
+     * @param in   is the binary reader.
+     * @param path is the folder the game file is in.
+     * @return the layout or an error.
+     * @throws IOException if the reading fails.
+     */
+    public static Result<Layout> read(
+        BinaryReader in,
+        Path path
+    ) throws IOException {
+        String name = in.readString();
+        String script = in.readBoolean() ? in.readString() : null;
+        Path segmentPath = null;
+        byte[] block;
+        if (in.getVersion() >= 2 && in.readBoolean()) {
+            segmentPath = path.resolve(in.readString());
+            block = Files.readAllBytes(segmentPath);
+        } else {
+            block = in.readBlock();
+        }
+        Layout layout = Layout.lazy(name, block, path);
+        if (!in.isLazy()) layout.startBuilding();
+        if (segmentPath != null) {
+            layout.segment = segmentPath.getFileName().toString();
+            layout.segmentPath = segmentPath;
+            layout.segmentModifications = layout.modifications;
+        }
+        layout.setScript(script);
+        try {
+            int n = in.readVarint();
+            for (int i = 0; i < n; i++) {
+                Result<Layout> child = Layout.read(in, path);
+                if (!child.success()) {
+                    layout.abandonBuilding();
+                    return child;
+                }
+                layout.addChild(child.value());
+            }
+        } catch (IOException | RuntimeException e) {
+            layout.abandonBuilding();
+            throw e;
+        }
+        layout.markClean();
+        in.layoutDone(layout);
+        return Result.ok(layout);
+    }
+
+    /**
+     * Reads the names of the segment files that a layout and all of it's
+     * children use from the binary format, skipping over everything else.
+     * @param in       is the binary reader.
+     * @param segments is where to put the names.
+     * @throws IOException if the reading fails.
+     */
+    public static void readSegments(
+        BinaryReader in,
+        Set<String> segments
+    ) throws IOException {
+        in.readString();
+        if (in.readBoolean()) in.readString();
+        if (in.getVersion() >= 2 && in.readBoolean()) {
+            segments.add(Path.of(in.readString()).getFileName().toString());
+        } else {
+            in.skipBlock();
+        }
+        int n = in.readVarint();
+        for (int i = 0; i < n; i++) Layout.readSegments(in, segments);
+    }
+
+    /**
+     * Converts the layout and all of it's children into json.
+     * @param path is the path to the game file.
+     * @return the json.
+     * @throws JSONException if the leaves can't be built.
+     */
     @Override
     public JSONObject toJson(Path path) {
         JSONArray children = new JSONArray();
         for (Layout child: this.getChildren()) children.put(child.toJson(path));
         JSONObject json = new JSONObject();
         json.put("name", this.name);
-        json.put("root", this.root.toJson(path));
+        try {
+            if (this.sourceJson != null && this.canWriteSource(path)) {
+                json.put("root", this.sourceJson);
+            } else {
+                Leaf root = this.peekRoot();
+                try {
+                    json.put("root", root.toJson(path));
+                } finally {
+                    this.unpeekRoot(root);
+                }
+            }
+        } catch (IOException e) {
+            throw new JSONException(e.getMessage());
+        }
         json.put("children", children);
         json.put("script", this.script);
         return json;
@@ -285,7 +1105,7 @@ public class Layout implements Artefact, TreeModel {
 
     @Override
     public Object getRoot() {
-        return this.root;
+        return this.load();
     }
 
     @Override
@@ -6,21 +6,40 @@ import org.json.JSONObject;
 
 import javax.swing.tree.TreePath;
 import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A thing that can be overlaid into a composition and has a form in 2d space.
+ * Each leaf caches the matrices that take points between it's own space and
+ * the world space. When a transformation or parent changes the leaf and
+ * everything below it get marked dirty, and they are only recalculated the
+ * next time they are needed. Bounds work the same way except going upwards,
+ * since a leaf's subtree bounds depend on those of it's children.
  */
 public abstract class Leaf implements Artefact {
     private final List<Leaf> children = new ArrayList<>();
+    private final Map<String, Leaf> names = new HashMap<>();
+    private final Map<String, Integer> counters = new HashMap<>();
+    private final AffineTransform world = new AffineTransform();
+    private final AffineTransform worldInverse = new AffineTransform();
     private Transformation transformation = new Transformation();
+    private Rectangle localBounds = null;
+    private Rectangle subtreeBounds = null;
+    private int subtreeSize = 0;
+    private int subtreeLabel = 0;
     private String name;
     private Leaf parent = null;
+    private Layout layout = null;
     private boolean locked = false;
+    private boolean worldDirty = true;
 
     /**
      * Leaves should never be unnamed.
@@ -28,6 +47,7 @@ public abstract class Leaf implements Artefact {
      */
     public Leaf(String name) {
         this.name = name;
+        this.transformation.setListener(this::transformed);
     }
 
     /**
@@ -39,18 +59,19 @@ public abstract class Leaf implements Artefact {
     }
 
     /**
-     * Sets the leaf's name and sets it dirty.
+     * Sets the leaf's name and sets it dirty. If one of it's siblings already
+     * has that name then it gets a number stuck on the end.
      * @param name is the name to give it.
      */
     public void setName(String name) {
-        String test = name;
         if (this.parent != null) {
-            for (int i = 1; i < Integer.MAX_VALUE; i++) {
-                if (this.parent.getChildByName(test) == null) break;
-                test = String.format("%s%d", name, i);
-            }
+            name = this.parent.uniqueName(name, this);
+            this.parent.unindex(this);
         }
-        this.name = test;
+        this.name = name;
+        if (this.parent != null) this.parent.index(this);
+        this.invalidateSubtreeBounds();
+        this.modified();
     }
 
     /**
@@ -74,7 +95,34 @@ public abstract class Leaf implements Artefact {
      * @param parent is the leaf to make the parent.
      */
     public void setParent(Leaf parent) {
+        if (this.parent != null) this.parent.invalidateSubtreeBounds();
         this.parent = parent;
+        this.invalidateSubtreeBounds();
+        if (parent != null) parent.invalidateSubtreeBounds();
+        this.invalidateWorld(null);
+        SpatialIndex index = this.getIndex();
+        if (index != null) index.markSubtree(this);
+        this.modified();
+    }
+
+    /**
+     * Gives you the layout that this leaf is in, which is found by going up
+     * to the root leaf.
+     * @return the layout or null if the leaf is not in one.
+     */
+    public Layout getLayout() {
+        Leaf leaf = this;
+        while (leaf.parent != null) leaf = leaf.parent;
+        return leaf.layout;
+    }
+
+    /**
+     * Sets the layout that this leaf is the root of. Only the layout should
+     * call this.
+     * @param layout is the layout.
+     */
+    public void setLayout(Layout layout) {
+        this.layout = layout;
     }
 
     /**
@@ -91,10 +139,13 @@ public abstract class Leaf implements Artefact {
      */
     public void setLocked(boolean locked) {
         this.locked = locked;
+        this.modified();
     }
 
     /**
-     * Gives you access to the child list.
+     * Gives you access to the child list. Don't add or remove children
+     * through it since then they won't be found by name, use addChild and
+     * removeChild.
      * @return the list of children.
      */
     public List<Leaf> getChildren() {
@@ -107,10 +158,7 @@ public abstract class Leaf implements Artefact {
      * @return the found thingy.
      */
     public Leaf getChildByName(String name) {
-        for (Leaf leaf: this.children) {
-            if (leaf.getName().equals(name)) return leaf;
-        }
-        return null;
+        return this.names.get(name);
     }
 
     /**
@@ -118,9 +166,99 @@ public abstract class Leaf implements Artefact {
      * @param child is the leaf to add.
      */
     public void addChild(Leaf child) {
+        this.addChild(-1, child);
+    }
+
+    /**
+     * Adds a child node to the leaf at a given place among the other
+     * children, and makes sure that it's name is unique.
+     * @param index is where to put it, or -1 to put it at the end.
+     * @param child is the leaf to add.
+     */
+    public void addChild(int index, Leaf child) {
         child.setParent(this);
+        if (index == -1) {
+            this.children.add(child);
+        } else {
+            this.children.add(index, child);
+        }
         child.setName(child.getName());
+    }
+
+    /**
+     * Takes a child away from this leaf. It's parent is left alone since it
+     * is normally about to get added somewhere else.
+     * @param child is the child to remove.
+     * @return true if it was a child of this leaf.
+     */
+    public boolean removeChild(Leaf child) {
+        int index = this.children.indexOf(child);
+        if (index == -1) return false;
+        this.unindex(child);
+        this.children.remove(index);
+        return true;
+    }
+
+    /**
+     * Works out a name for a child that none of the other children have. If
+     * the name is taken then it gets the next number for that name stuck on
+     * the end, and the number is remembered so the next one doesn't have to
+     * count up from 1 again.
+     * @param name  is the name it wants.
+     * @param child is the child that wants it.
+     * @return the name it can have.
+     */
+    private String uniqueName(String name, Leaf child) {
+        Leaf owner = this.names.get(name);
+        if (owner == null || owner == child) return name;
+        int i = this.counters.getOrDefault(name, 1);
+        String test;
+        do {
+            test = String.format("%s%d", name, i);
+            i++;
+        } while (this.names.containsKey(test));
+        this.counters.put(name, i);
+        return test;
+    }
+
+    /**
+     * Adds a child to the name index. If another child already has the name
+     * then that one stays in the index, like if the file it was loaded from
+     * had two with the same name.
+     * @param child is the child to add which is already in the child list.
+     */
+    private void index(Leaf child) {
+        this.names.putIfAbsent(child.name, child);
+    }
+
+    /**
+     * Takes a child out of the name index. If there are other children with
+     * the same name then the first of them goes in instead.
+     * @param child is the child to take out which is still in the child
+     *              list.
+     */
+    private void unindex(Leaf child) {
+        if (child.name == null || !this.names.remove(child.name, child)) {
+            return;
+        }
+        if (this.names.size() >= this.children.size() - 1) return;
+        for (Leaf other: this.children) {
+            if (other != child && other.name.equals(child.name)) {
+                this.names.put(other.name, other);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Puts a child at the end of the child list without renaming it, which
+     * is for when the children are being read in or copied.
+     * @param child is the child to add.
+     */
+    private void attachChild(Leaf child) {
         this.children.add(child);
+        this.index(child);
+        child.setParent(this);
     }
 
     /**
@@ -138,37 +276,186 @@ public abstract class Leaf implements Artefact {
         return new TreePath(path.toArray());
     }
 
+    /**
+     * Gives you the matrix that takes points in this leaf's coordinate space
+     * out into the world space, which is all of the transformations from the
+     * root down to this leaf multiplied together. It belongs to the leaf so
+     * don't modify it.
+     * @return the local to world matrix.
+     */
+    public AffineTransform getWorldMatrix() {
+        if (this.worldDirty) this.refreshWorld();
+        return this.world;
+    }
+
+    /**
+     * Gives you the matrix that takes points in the world space into this
+     * leaf's coordinate space. Also don't modify this one.
+     * @return the world to local matrix.
+     */
+    public AffineTransform getWorldInverse() {
+        if (this.worldDirty) this.refreshWorld();
+        return this.worldInverse;
+    }
+
     /**
      * Takes a point from the world space and converts it into this leaf's
-     * coordinate space by getting all of this leaf's ancestors to transform
-     * it in sequence.
+     * coordinate space.
      * @param in is the world space point which is not harmed in this process.
      * @return the leaf space point.
      */
     public Point globalToLocal(Point in) {
-        if (this.parent != null) {
-            return this.transformation.in(this.parent.globalToLocal(in));
+        return in.transform(this.getWorldInverse());
+    }
+
+    /**
+     * Takes a point in this leaf's coordinate space and converts it into the
+     * world space.
+     * @param in is the leaf space point which is not harmed in this process.
+     * @return the world space point.
+     */
+    public Point localToGlobal(Point in) {
+        return in.transform(this.getWorldMatrix());
+    }
+
+    /**
+     * Gives you a rectangle in this leaf's coordinate space that contains
+     * every point that insideLocal would say is inside this leaf. It only
+     * gets recalculated after the leaf's shape changes. Don't modify it.
+     * @return the bounds of the leaf.
+     */
+    public Rectangle getLocalBounds() {
+        if (this.localBounds == null) {
+            this.localBounds = this.calculateLocalBounds();
         }
-        return this.transformation.in(in);
+        return this.localBounds;
+    }
+
+    /**
+     * Gives you a rectangle in the parent's coordinate space that contains
+     * this leaf, it's origin, and all of the leaves below it. It only gets
+     * recalculated after something in it moves or changes shape. Don't
+     * modify it.
+     * @return the bounds of the whole subtree.
+     */
+    public Rectangle getSubtreeBounds() {
+        if (this.subtreeBounds == null) {
+            Rectangle bounds = this.getLocalBounds().union(new Rectangle());
+            int size = 1;
+            int label = this.name == null ? 0 : this.name.length();
+            for (Leaf child: this.children) {
+                bounds = bounds.union(child.getSubtreeBounds());
+                size += child.getSubtreeSize();
+                label = Math.max(label, child.getSubtreeLabel());
+            }
+            this.subtreeSize = size;
+            this.subtreeLabel = label;
+            this.subtreeBounds = bounds.transform(
+                this.transformation.getMatrix()
+            );
+        }
+        return this.subtreeBounds;
+    }
+
+    /**
+     * Gives you the number of leaves in this leaf's subtree including itself.
+     * It's worked out along with the subtree bounds.
+     * @return the number of leaves.
+     */
+    public int getSubtreeSize() {
+        this.getSubtreeBounds();
+        return this.subtreeSize;
+    }
+
+    /**
+     * Gives you the number of characters in the longest name of the leaves
+     * in this leaf's subtree, which is how far the name labels could stick
+     * out of the subtree bounds. It's worked out along with the subtree
+     * bounds.
+     * @return the number of characters.
+     */
+    public int getSubtreeLabel() {
+        this.getSubtreeBounds();
+        return this.subtreeLabel;
+    }
+
+    /**
+     * Gives you a rectangle in world space that contains the whole of this
+     * leaf, but not it's children.
+     * @return the world space bounds.
+     */
+    public Rectangle getWorldBounds() {
+        return this.getLocalBounds().transform(this.getWorldMatrix());
+    }
+
+    /**
+     * Tells you if this leaf gets drawn after another leaf in the same tree,
+     * which is the case if it is below the other leaf or if it is in the
+     * family of a later sibling of one of the other leaf's ancestors.
+     * @param other is the other leaf.
+     * @return true iff this one gets drawn after the other one.
+     */
+    public boolean isDrawnAfter(Leaf other) {
+        Object[] mine = this.getLineage().getPath();
+        Object[] theirs = other.getLineage().getPath();
+        int i = 0;
+        while (i < mine.length && i < theirs.length && mine[i] == theirs[i]) {
+            i++;
+        }
+        if (i == theirs.length) return i < mine.length;
+        if (i == mine.length || i == 0) return false;
+        List<Leaf> siblings = ((Leaf)mine[i - 1]).getChildren();
+        return siblings.indexOf(mine[i]) > siblings.indexOf(theirs[i]);
     }
 
     /**
      * Tells you if this leaf or a child of it contains the given point,
-     * favouring leaves that are lower in the heirachy.
+     * favouring leaves that are lower in the heirachy. This looks at every
+     * leaf, so normally you would want to use the layout's hit which has an
+     * index to do the same thing faster.
      * @param point is the point to look at.
-     * @return the lowest node fulfilling these conditions.
+     * @return the lowest node fulfilling these conditions, and the point in
+     *         it that was hit if it has any.
      */
     public Pair<Leaf, Point> hit(Point point) {
+        if (!this.getSubtreeBounds().contains(point)) {
+            return new Pair<>(null, null);
+        }
         Point t = this.transformation.in(point);
         for (int i = this.children.size() - 1; i >= 0; i--) {
             Leaf child = this.children.get(i);
             Pair<Leaf, Point> found = child.hit(t);
             if (found.getA() != null) return found;
         }
-        if (this.insideLocal(t) && !this.locked) return new Pair<>(this, null);
+        if (this.insideLocal(t) && !this.locked) {
+            return new Pair<>(this, this.getPointByPosition(t));
+        }
         return new Pair<>(null, null);
     }
 
+    /**
+     * Gives you the point in this leaf that the given location hits if any.
+     * Only shapes actually have points so other leaves just say no.
+     * @param pos is the position to look at in this leaf's coordinate space.
+     * @return the found point if any.
+     */
+    public Point getPointByPosition(Point pos) {
+        return null;
+    }
+
+    /**
+     * Lets the leaf know that it's shape has changed so that it's bounds get
+     * recalculated and anything that is keeping track of where it is can find
+     * out.
+     */
+    public void invalidateBounds() {
+        this.localBounds = null;
+        this.invalidateSubtreeBounds();
+        SpatialIndex index = this.getIndex();
+        if (index != null) index.mark(this);
+        this.modified();
+    }
+
     /**
      * Makes the renderer start drawingin the normal selected or not colours.
      * @param r is the renderer to make start doing that.
@@ -181,15 +468,24 @@ public abstract class Leaf implements Artefact {
     }
 
     /**
-     * Does generic rendering stuff that all leaves do.
+     * Does generic rendering stuff that all leaves do. If the leaf and all
+     * of it's children are not visible to the renderer, or the renderer has
+     * been told to leave it out, then it does nothing.
      * @param r is the renderer to use.
      */
     public final void render(Renderer r) {
+        if (r.isExcluded(this)) return;
+        if (!r.isVisible(this.getSubtreeBounds(), this.getSubtreeLabel())) {
+            r.countCulled(this.getSubtreeSize());
+            return;
+        }
+        r.countDrawn();
         r.push(this.transformation);
         this.renderParticular(r);
         this.normalColour(r);
         r.drawText(Point.ORIGIN, this.name);
         for (Leaf child: this.children) {
+            if (r.isExcluded(child)) continue;
             r.drawDottedLine(
                 Point.ORIGIN,
                 child.getTransformation().getTranslation()
@@ -199,6 +495,80 @@ public abstract class Leaf implements Artefact {
         r.pop();
     }
 
+    /**
+     * Recalculates the world matrices from the parent's world matrices and
+     * this leaf's transformation.
+     */
+    private void refreshWorld() {
+        if (this.parent != null) {
+            this.world.setTransform(this.parent.getWorldMatrix());
+            this.worldInverse.setTransform(this.transformation.getInverse());
+            this.worldInverse.concatenate(this.parent.getWorldInverse());
+        } else {
+            this.world.setToIdentity();
+            this.worldInverse.setTransform(this.transformation.getInverse());
+        }
+        this.world.concatenate(this.transformation.getMatrix());
+        this.worldDirty = false;
+    }
+
+    /**
+     * Gets called when this leaf's transformation changes.
+     */
+    private void transformed() {
+        this.invalidateSubtreeBounds();
+        this.invalidateWorld(this.getIndex());
+        this.modified();
+    }
+
+    /**
+     * Tells the layout the leaf is in that it's leaves have changed, so it
+     * knows it can't just throw them away and build them again.
+     */
+    private void modified() {
+        Layout layout = this.getLayout();
+        if (layout != null) layout.modified();
+    }
+
+    /**
+     * Marks the subtree bounds of this leaf and all of it's ancestors as
+     * needing to be recalculated. A leaf's bounds are only ever worked out
+     * after those of all of it's children, and giving a leaf a new parent
+     * marks that parent, so if a leaf is already marked then all of it's
+     * ancestors must be too and it stops there.
+     */
+    private void invalidateSubtreeBounds() {
+        Leaf leaf = this;
+        while (leaf != null && leaf.subtreeBounds != null) {
+            leaf.subtreeBounds = null;
+            leaf = leaf.parent;
+        }
+    }
+
+    /**
+     * Marks this leaf's world matrices as needing to be recalculated along
+     * with those of all the leaves below it. If this leaf is already dirty
+     * then so is everything below it so it stops there.
+     * @param index is the index of the layout the leaf is in which gets told
+     *              about every leaf that moved. It can be null.
+     */
+    private void invalidateWorld(SpatialIndex index) {
+        if (this.worldDirty) return;
+        this.worldDirty = true;
+        if (index != null) index.mark(this);
+        for (Leaf child: this.children) child.invalidateWorld(index);
+    }
+
+    /**
+     * Gives you the spatial index of the layout this leaf is in.
+     * @return the index or null if it's not in a layout.
+     */
+    private SpatialIndex getIndex() {
+        Layout layout = this.getLayout();
+        if (layout == null) return null;
+        return layout.getIndex();
+    }
+
     /**
      * Does the rendering stuff that is unique to a certain type of leaf.
      * @param r is the renderer.
@@ -214,6 +584,13 @@ public abstract class Leaf implements Artefact {
      */
     public abstract boolean insideLocal(Point point);
 
+    /**
+     * Works out a rectangle in this leaf's coordinate space that contains
+     * every point that insideLocal would say is inside this leaf.
+     * @return the bounds of the leaf.
+     */
+    protected abstract Rectangle calculateLocalBounds();
+
     /**
      * Gives you the root part of the default name this leaf should have. The
      * value is dependent both on the type of the leaf, and on other things
@@ -253,47 +630,288 @@ public abstract class Leaf implements Artefact {
         if (!transformationResult.success()) {
             return Result.fail(transformationResult.message());
         }
+        Result<Leaf> leaf = Leaf.create(type, json, root);
+        if (leaf.success()) {
+            Leaf actualLeaf = leaf.value();
+            actualLeaf.setUp(name, transformationResult.value(), locked);
+            for (int i = 0; i < childrenArray.length(); i++) {
+                Result<Leaf> child = Leaf.fromJson(
+                    childrenArray.getJSONObject(i),
+                    root
+                );
+                if (child.success()) {
+                    actualLeaf.attachChild(child.value());
+                } else {
+                    return Result.fail(child.message());
+                }
+            }
+        }
+        return leaf;
+    }
+
+    /**
+     * Reads a leaf and all of it's children from a json reader that is up to
+     * a leaf object. The members can be in any order, so anything that is not
+     * common to all leaves is collected into a little json object which then
+     * gets given to the fromJson of the right type of leaf.
+     * @param in   is the json reader.
+     * @param root is the path to the main game file.
+     * @return the created leaf in a result unless it fucks up.
+     */
+    public static Result<Leaf> read(JsonReader in, Path root) {
+        JSONObject extra = new JSONObject();
+        String name = null;
+        Boolean locked = null;
+        Transformation transformation = null;
+        List<Leaf> children = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            switch (key) {
+                case "name":
+                    name = in.nextString();
+                    break;
+                case "locked":
+                    locked = in.nextBoolean();
+                    break;
+                case "transformation":
+                    Result<Transformation> t = Transformation.read(in);
+                    if (!t.success()) return Result.fail(t.message());
+                    transformation = t.value();
+                    break;
+                case "children":
+                    children = new ArrayList<>();
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        Result<Leaf> child = Leaf.read(in, root);
+                        if (!child.success()) return child;
+                        children.add(child.value());
+                    }
+                    in.endArray();
+                    break;
+                default:
+                    extra.put(key, in.nextValue());
+            }
+        }
+        in.endObject();
+        Object type = extra.opt("type");
+        if (!(type instanceof String) || name == null || locked == null ||
+            transformation == null || children == null
+        ) {
+            return Result.fail(
+                "Invalid json for leaf object: %s",
+                name == null ? extra : name
+            );
+        }
+        Result<Leaf> leaf = Leaf.create((String)type, extra, root);
+        if (leaf.success()) {
+            Leaf actualLeaf = leaf.value();
+            actualLeaf.setUp(name, transformation, locked);
+            for (Leaf child: children) actualLeaf.attachChild(child);
+        }
+        return leaf;
+    }
+
+    /**
+     * Writes the leaf and all of it's children out in the binary format. The
+     * type and the stuff particular to it come first so that the reader
+     * knows what to make.
+     * @param out  is the binary writer.
+     * @param root is the path to the main game file.
+     * @throws IOException if the writing fails.
+     */
+    public final void write(BinaryWriter out, Path root) throws IOException {
+        this.writeFields(out, root);
+        out.writeString(this.name);
+        out.writeBoolean(this.locked);
+        this.transformation.write(out);
+        out.writeVarint(this.children.size());
+        for (Leaf child: this.children) child.write(out, root);
+    }
+
+    /**
+     * Reads a leaf and all of it's children that were written in the binary
+     * format.
+     * @param in   is the binary reader.
+     * @param root is the folder the game file is in.
+     * @return the leaf or an error message.
+     * @throws IOException if the reading fails.
+     */
+    public static Result<Leaf> read(
+        BinaryReader in,
+        Path root
+    ) throws IOException {
+        String type = in.readString();
         Result<Leaf> leaf;
         switch (type) {
             case PointLeaf.TITLE:
-                leaf = PointLeaf.fromJson(json, root);
+                leaf = PointLeaf.read(in, root);
                 break;
             case ShapeLeaf.TITLE:
-                leaf = ShapeLeaf.fromJson(json, root);
+                leaf = ShapeLeaf.read(in, root);
                 break;
             case SpriteLeaf.TITLE:
-                leaf = SpriteLeaf.fromJson(json, root);
+                leaf = SpriteLeaf.read(in, root);
                 break;
             case ImageLeaf.TITLE:
-                leaf = ImageLeaf.fromJson(json, root);
+                leaf = ImageLeaf.read(in, root);
                 break;
+            default:
+                return Result.fail("Invalid leaf type: %s", type);
+        }
+        if (!leaf.success()) return leaf;
+        String name = in.readString();
+        boolean locked = in.readBoolean();
+        Transformation transformation = Transformation.read(in);
+        Leaf actualLeaf = leaf.value();
+        actualLeaf.setUp(name, transformation, locked);
+        int n = in.readVarint();
+        for (int i = 0; i < n; i++) {
+            Result<Leaf> child = Leaf.read(in, root);
+            if (!child.success()) return child;
+            actualLeaf.attachChild(child.value());
+        }
+        return leaf;
+    }
+
+    /**
+     * Makes a copy of the leaf and all of it's children. Nothing in the copy
+     * is shared with the original except for stuff like images that never
+     * get changed in place.
+     * @return the copy which has no parent and is not in a layout.
+     */
+    public final Leaf copy() {
+        Leaf copy = this.copyParticular();
+        copy.setUp(
+            this.name,
+            new Transformation(this.transformation),
+            this.locked
+        );
+        for (Leaf child: this.children) copy.attachChild(child.copy());
+        return copy;
+    }
+
+    /**
+     * Makes a new leaf of the same type as this one with copies of the stuff
+     * that is particular to that type. The stuff that all leaves have gets
+     * copied by copy.
+     * @return the new leaf.
+     */
+    protected abstract Leaf copyParticular();
+
+    /**
+     * Lets go of anything that this leaf and all of it's children are holding
+     * onto outside of themselves, like images in the image cache, because the
+     * tree is being thrown away. Copies share that stuff with the leaves they
+     * were copied from, so only do this to trees that were built or read.
+     */
+    public final void release() {
+        this.releaseParticular();
+        for (Leaf child: this.children) child.release();
+    }
+
+    /**
+     * Lets go of the stuff that is particular to this type of leaf when the
+     * tree is being thrown away. By default there is nothing to let go of.
+     */
+    protected void releaseParticular() {
+    }
+
+    /**
+     * Creates the right type of leaf for a type name from json that has the
+     * stuff in it that is particular to that type.
+     * @param type is the type name.
+     * @param json is the json with the particular stuff.
+     * @param root is the path to the main game file.
+     * @return the new leaf or an error if the type is not real.
+     */
+    private static Result<Leaf> create(
+        String type,
+        JSONObject json,
+        Path root
+    ) {
+        switch (type) {
+            case PointLeaf.TITLE:
+                return PointLeaf.fromJson(json, root);
+            case ShapeLeaf.TITLE:
+                return ShapeLeaf.fromJson(json, root);
+            case SpriteLeaf.TITLE:
+                return SpriteLeaf.fromJson(json, root);
+            case ImageLeaf.TITLE:
+                return ImageLeaf.fromJson(json, root);
             default:
                 return Result.fail(String.format(
                     "Invalid leaf type: %s",
                     type
                 ));
         }
-        if (leaf.success()) {
-            Leaf actualLeaf = leaf.value();
-            actualLeaf.name = name;
-            actualLeaf.transformation = transformationResult.value();
-            actualLeaf.locked = locked;
-            for (int i = 0; i < childrenArray.length(); i++) {
-                Result<Leaf> child = Leaf.fromJson(
-                    childrenArray.getJSONObject(i),
-                    root
-                );
-                if (child.success()) {
-                    actualLeaf.children.add(child.value());
-                    child.value().setParent(actualLeaf);
-                } else {
-                    return Result.fail(child.message());
-                }
-            }
-        }
-        return leaf;
     }
 
+    /**
+     * Sets the things that all leaves have after one has been loaded.
+     * @param name           is the leaf's name.
+     * @param transformation is the leaf's transformation.
+     * @param locked         is whether the leaf is locked.
+     */
+    private void setUp(
+        String name,
+        Transformation transformation,
+        boolean locked
+    ) {
+        this.name = name;
+        this.transformation = transformation;
+        this.subtreeBounds = null;
+        this.transformation.setListener(this::transformed);
+        this.locked = locked;
+    }
+
+    /**
+     * Writes the leaf and all of it's children out as json. The stuff that
+     * is particular to the type of leaf gets written by writeFields.
+     * @param out  is the json writer to write to.
+     * @param root is the path to the main game file.
+     * @throws IOException if the writing fails.
+     */
+    @Override
+    public final void write(JsonWriter out, Path root) throws IOException {
+        out.beginObject();
+        out.name("name").value(this.name);
+        out.name("transformation");
+        this.transformation.write(out, root);
+        out.name("locked").value(this.locked);
+        this.writeFields(out, root);
+        out.name("children").beginArray();
+        for (Leaf child: this.children) child.write(out, root);
+        out.endArray();
+        out.endObject();
+    }
+
+    /**
+     * Writes out the members of the leaf's json object that are particular
+     * to it's type, which has to include the type itself. It should give
+     * the same stuff that toJson adds.
+     * @param out  is the json writer to write to.
+     * @param root is the path to the main game file.
+     * @throws IOException if the writing fails.
+     */
+    protected abstract void writeFields(
+        JsonWriter out,
+        Path root
+    ) throws IOException;
+
+    /**
+     * Writes out the stuff that is particular to the type of leaf in the
+     * binary format, starting with the type. It must match what the type's
+     * static read function reads.
+     * @param out  is the binary writer.
+     * @param root is the path to the main game file.
+     * @throws IOException if the writing fails.
+     */
+    protected abstract void writeFields(
+        BinaryWriter out,
+        Path root
+    ) throws IOException;
+
     @Override
     public JSONObject toJson(Path root) {
         JSONObject json = new JSONObject();
@@ -0,0 +1,224 @@
+package peony;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An image along with smaller copies of it that are each half the size of
+ * the one before, so that when it is drawn zoomed out the renderer can use
+ * one that is about the right size instead of squishing the whole thing down
+ * every frame. The smaller ones only get made the first time they are
+ * wanted. It also has the stuff for turning images into the format the
+ * screen uses, since images in any other format have to be converted every
+ * time they are drawn rather than just being copied.
+ */
+public class Mipmap {
+    public static final int MIN_REGION_SIZE = 8;
+    private final List<Image> levels = new ArrayList<>();
+    private final Image image;
+    private final int width;
+    private final int height;
+
+    /**
+     * Creates the mipmap out of the full size image.
+     * @param image is the full size image.
+     */
+    public Mipmap(Image image) {
+        this.levels.add(image);
+        this.image = image;
+        this.width = image.getWidth(null);
+        this.height = image.getHeight(null);
+    }
+
+    /**
+     * Gives you the full size image.
+     * @return the image.
+     */
+    public Image getImage() {
+        return this.image;
+    }
+
+    /**
+     * Gives you the width of the full size image.
+     * @return the width in pixels.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Gives you the height of the full size image.
+     * @return the height in pixels.
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Tells you how many levels there can be, which is until the image is
+     * down to one pixel wide or high.
+     * @return the number of levels including the full size one.
+     */
+    public int getLevelCount() {
+        int smallest = Math.max(1, Math.min(this.width, this.height));
+        return 32 - Integer.numberOfLeadingZeros(smallest);
+    }
+
+    /**
+     * Works out which level to draw with when the image is being scaled by
+     * some amount, which is the smallest one that is still at least as big
+     * as what is going to end up on the screen.
+     * @param scale is how much the full size image is being scaled by.
+     * @return the level.
+     */
+    public int getLevelFor(double scale) {
+        if (!(scale > 0) || scale >= 1) return 0;
+        int level = (int)Math.floor(-Math.log(scale) / Math.log(2));
+        return Math.min(level, this.getLevelCount() - 1);
+    }
+
+    /**
+     * Works out which level to draw part of the image with, like a sprite
+     * off an atlas page. It's the same as for the whole image except it
+     * never gets so small that the part is less than MIN_REGION_SIZE pixels
+     * across, since each pixel in the smaller levels is the pixels around it
+     * averaged together, and at the edges of a small part that would be
+     * mostly whatever is next to it on the page.
+     * @param scale  is how much the full size image is being scaled by.
+     * @param region is the part of the full size image being drawn.
+     * @return the level.
+     */
+    public int getLevelFor(double scale, Rectangle region) {
+        int smallest = Math.min(
+            region.getSize().getXi(),
+            region.getSize().getYi()
+        ) / Mipmap.MIN_REGION_SIZE;
+        int most = smallest < 1 ?
+            0 :
+            31 - Integer.numberOfLeadingZeros(smallest);
+        return Math.min(this.getLevelFor(scale), most);
+    }
+
+    /**
+     * Gives you one of the levels, making it and any before it that are not
+     * made yet.
+     * @param level is the level where 0 is the full size image and each one
+     *              after that is half as big.
+     * @return the image for that level.
+     */
+    public synchronized Image getLevel(int level) {
+        level = Math.max(0, Math.min(level, this.getLevelCount() - 1));
+        while (this.levels.size() <= level) {
+            Image last = this.levels.get(this.levels.size() - 1);
+            this.levels.add(Mipmap.halve(last));
+        }
+        return this.levels.get(level);
+    }
+
+    /**
+     * Makes a blank image in the format that the screen uses. When there is
+     * no screen it makes one with premultiplied alpha, which is what java2d
+     * is fastest at drawing when it is doing it all in software.
+     * @param width        is the width of the image.
+     * @param height       is the height of the image.
+     * @param transparency is the transparency it needs to be able to have,
+     *                     from the Transparency interface.
+     * @return the new image.
+     */
+    public static BufferedImage createCompatible(
+        int width,
+        int height,
+        int transparency
+    ) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(
+                width,
+                height,
+                transparency == Transparency.OPAQUE ?
+                    BufferedImage.TYPE_INT_RGB :
+                    BufferedImage.TYPE_INT_ARGB_PRE
+            );
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment()
+            .getDefaultScreenDevice()
+            .getDefaultConfiguration()
+            .createCompatibleImage(width, height, transparency);
+    }
+
+    /**
+     * Gives you the colour model that images in the format the screen uses
+     * have. When there is no screen it is the one that createCompatible
+     * uses for that.
+     * @param transparency is the transparency it needs to be able to have,
+     *                     from the Transparency interface.
+     * @return the colour model.
+     */
+    public static ColorModel getCompatibleModel(int transparency) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return Mipmap.createCompatible(1, 1, transparency).getColorModel();
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment()
+            .getDefaultScreenDevice()
+            .getDefaultConfiguration()
+            .getColorModel(transparency);
+    }
+
+    /**
+     * Copies an image into one that is in the format the screen uses, keeping
+     * it's transparency. If it is already in the right format then you just
+     * get it back without anything new being made.
+     * @param image is the image to copy.
+     * @return the image in the right format.
+     */
+    public static Image toCompatible(Image image) {
+        int transparency = image instanceof Transparency ?
+            ((Transparency)image).getTransparency() :
+            Transparency.TRANSLUCENT;
+        if (image instanceof BufferedImage) {
+            BufferedImage buffered = (BufferedImage)image;
+            ColorModel model = Mipmap.getCompatibleModel(transparency);
+            if (buffered.getColorModel().equals(model) &&
+                model.isCompatibleRaster(buffered.getRaster())
+            ) {
+                return image;
+            }
+        }
+        BufferedImage compatible = Mipmap.createCompatible(
+            image.getWidth(null),
+            image.getHeight(null),
+            transparency
+        );
+        Graphics2D g = compatible.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return compatible;
+    }
+
+    /**
+     * Makes a copy of an image that is half as wide and half as high, in the
+     * format that the screen uses.
+     * @param image is the image to shrink.
+     * @return the new smaller image.
+     */
+    private static Image halve(Image image) {
+        int width = Math.max(1, image.getWidth(null) / 2);
+        int height = Math.max(1, image.getHeight(null) / 2);
+        BufferedImage half = Mipmap.createCompatible(
+            width,
+            height,
+            Transparency.TRANSLUCENT
+        );
+        Graphics2D g = half.createGraphics();
+        g.setRenderingHint(
+            RenderingHints.KEY_INTERPOLATION,
+            RenderingHints.VALUE_INTERPOLATION_BILINEAR
+        );
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return half;
+    }
+}
@@ -1,20 +1,35 @@
 package peony;
 
-import org.json.JSONObject;
+import org.json.JSONException;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
 
 /**
  * The state of the data we are actually meant to be modifying with this here
  * program.
  */
 public class Model {
+    public static final String BACKUP_SUFFIX = ".bak";
     private Layout selectedLayout;
     private Leaf selectedLeaf;
     private File file = null;
+    private boolean lazy = false;
+    private boolean split = false;
     private Game game;
 
     /**
@@ -25,6 +40,40 @@ public class Model {
         this.selectedLayout = this.game.getFirstLayout();
     }
 
+    /**
+     * Tells you whether games get loaded lazily, which means each layout's
+     * leaves only get built when it is selected.
+     * @return true if loading is lazy.
+     */
+    public boolean isLazy() {
+        return this.lazy;
+    }
+
+    /**
+     * Sets whether games get loaded lazily from now on.
+     * @param lazy is whether to be lazy.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Tells you whether binary games get saved with each layout's leaves in
+     * a separate file, so that only the layouts that changed get written.
+     * @return true if they are split.
+     */
+    public boolean isSplit() {
+        return this.split;
+    }
+
+    /**
+     * Sets whether binary games get saved split up.
+     * @param split is whether to split them.
+     */
+    public void setSplit(boolean split) {
+        this.split = split;
+    }
+
     /**
      * Gives you the currently selected leaf.
      * @return the currently selected leaf.
@@ -54,6 +103,7 @@ public class Model {
      * @param layout is the layout to set as selected.
      */
     public void setSelectedLayout(Layout layout) {
+        this.game.use(layout);
         this.selectedLayout = layout;
         this.selectedLeaf = null;
     }
@@ -84,38 +134,254 @@ public class Model {
 
     /**
      * Makes the model load the game from the given file and makes it reflect
-     * that instead of what it has currently.
+     * that instead of what it has currently. The file is read a bit at a time
+     * and the game is built as it goes.
      * @param file is the file to load from and it should not be null.
      * @return result thingy which has an error message on fail.
      */
     public Result<Void> load(File file) {
-        Result<JSONObject> json = Util.readJson(file);
-        if (!json.success()) return Result.fail(json.message());
-        Result<Game> newGame = Game.fromJson(
-            json.value(),
-            file.toPath().getParent()
-        );
+        Result<Game> newGame = Model.readGame(file, null, this.lazy);
         if (!newGame.success()) return Result.fail(newGame.message());
-        this.game = newGame.value();
-        this.file = file;
-        this.selectedLayout = this.game.getFirstLayout();
+        this.setGame(newGame.value(), file);
         return Result.ok();
     }
 
+    /**
+     * Swaps in a whole new game that has been loaded from a file, all at
+     * once. This is how a game loaded on another thread gets put in, so it
+     * should be called on the swing thread. Whether it gets saved split up
+     * is set to whether it was split up in the file, so saving it doesn't
+     * change that unless you ask.
+     * @param game is the new game.
+     * @param file is the file it was loaded from.
+     */
+    public void setGame(Game game, File file) {
+        this.game = game;
+        this.file = file;
+        this.split = game.isSplit();
+        this.selectedLayout = game.getFirstLayout();
+        game.use(this.selectedLayout);
+        this.selectedLeaf = null;
+    }
+
+    /**
+     * Makes a copy of the current game that won't change if the real one
+     * gets edited, so that it can be saved on another thread.
+     * @return the copy.
+     */
+    public Game snapshot() {
+        return this.game.copy();
+    }
+
     /**
      * Saves the model to it's configured file. If it does not have a configured
-     * file right now it just causes a nuisance for you instead.
+     * file right now it just causes a nuisance for you instead. The game is
+     * written straight out to the file as it goes.
      */
     public Result<Void> save() {
         if (this.file == null) return Result.fail("There is no game file.");
-        Path root = this.file.toPath();
+        Result<Void> result = Model.writeGame(
+            this.game,
+            this.file,
+            null,
+            this.split
+        );
+        if (result.success()) this.game.markSaved();
+        return result;
+    }
+
+    /**
+     * Reads a game from a file. The file can be json or binary, and which
+     * one it is gets worked out from the first few bytes. Either way the file
+     * is read a bit at a time and the game is built as it goes.
+     * @param file is the file to read.
+     * @return a result with the game unless it fucked up.
+     */
+    public static Result<Game> readGame(File file) {
+        return Model.readGame(file, null, false);
+    }
+
+    /**
+     * Reads a game from a file and tells a listener each time a layout has
+     * been read.
+     * @param file     is the file to read.
+     * @param listener is told about each layout as it is finished and can be
+     *                 null.
+     * @param lazy     is whether to leave the leaves of each layout unbuilt
+     *                 until the layout gets used.
+     * @return a result with the game unless it fucked up.
+     */
+    public static Result<Game> readGame(
+        File file,
+        ProgressListener listener,
+        boolean lazy
+    ) {
+        Path root = file.toPath().getParent();
+        try (InputStream in = new BufferedInputStream(
+            Files.newInputStream(file.toPath())
+        )) {
+            if (BinaryReader.isBinary(in)) {
+                BinaryReader reader = new BinaryReader(in);
+                reader.setListener(listener);
+                reader.setLazy(lazy);
+                return Game.read(reader, root);
+            }
+            JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8)
+            ));
+            reader.setListener(listener);
+            reader.setLazy(lazy);
+            return Game.read(reader, root);
+        } catch (IOException | JSONException e) {
+            return Result.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a game out to a file. If the file's name ends with the binary
+     * extension it gets written in the binary format, and otherwise it is
+     * json. Either way it is written straight out as it goes into a file
+     * next to it, and only once that is safely on the disk does it get moved
+     * over the real one, with the old one kept as a backup. That way if
+     * something goes wrong half way the old file is still fine. Segment
+     * files that the backup uses are kept too.
+     * @param game is the game to write.
+     * @param file is the file to write to.
+     * @return a result which has an error message if it failed.
+     */
+    public static Result<Void> writeGame(Game game, File file) {
+        return Model.writeGame(game, file, null, false);
+    }
+
+    /**
+     * Writes a game out to a file and tells a listener each time a layout
+     * has been written.
+     * @param game     is the game to write.
+     * @param file     is the file to write to.
+     * @param listener is told about each layout as it is finished and can be
+     *                 null.
+     * @param split    is whether to put the leaves of each layout in their
+     *                 own segment file, which only works for binary files.
+     * @return a result which has an error message if it failed.
+     */
+    public static Result<Void> writeGame(
+        Game game,
+        File file,
+        ProgressListener listener,
+        boolean split
+    ) {
+        Path root = file.toPath();
+        Path temp = root.resolveSibling(root.getFileName() + ".tmp");
+        BinaryWriter binary = null;
+        try (ChannelOutputStream out = ChannelOutputStream.open(temp)) {
+            if (BinaryWriter.isBinaryName(file.getName())) {
+                binary = new BinaryWriter(out);
+                binary.setListener(listener);
+                binary.setSplit(split);
+                game.write(binary, root);
+                binary.flush();
+            } else {
+                Writer writer = new OutputStreamWriter(
+                    out,
+                    StandardCharsets.UTF_8
+                );
+                JsonWriter jsonWriter = new JsonWriter(writer);
+                jsonWriter.setListener(listener);
+                game.write(jsonWriter, root);
+                writer.flush();
+            }
+            out.force();
+        } catch (IOException | JSONException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException deleteError) {
+                System.err.println(deleteError.getMessage());
+            }
+            return Result.fail(e.getMessage());
+        }
         try {
-            FileWriter writer = new FileWriter(this.file);
-            writer.write(this.game.toJson(root).toString());
-            writer.close();
+            Set<String> backup = null;
+            if (binary != null) {
+                backup = Model.readSegments(root);
+                Model.forceFolder(BinaryWriter.getSegmentFolder(root));
+            }
+            Model.replace(temp, root);
+            if (backup != null) {
+                for (String segment: backup) binary.useSegment(segment);
+                binary.removeUnusedSegments(root);
+            }
         } catch (IOException e) {
             return Result.fail(e.getMessage());
         }
         return Result.ok();
     }
+
+    /**
+     * Puts a freshly written file in the place of an old one. The old one
+     * becomes the backup, and the new one is moved over it in one atomic
+     * step so there is never a moment where the file is half written or
+     * missing.
+     * @param temp   is the new file.
+     * @param target is where it has to go.
+     * @throws IOException if it fails.
+     */
+    private static void replace(Path temp, Path target) throws IOException {
+        if (Files.exists(target)) {
+            Path backup = target.resolveSibling(
+                target.getFileName() + Model.BACKUP_SUFFIX
+            );
+            Files.deleteIfExists(backup);
+            try {
+                Files.createLink(backup, target);
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(target, backup);
+            }
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Model.forceFolder(target.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Finds out which segment files a game file uses, so that they can be
+     * kept for it after it becomes the backup.
+     * @param file is the game file.
+     * @return the names of the segment files, which is none if the file is
+     *         not there or is not binary, or null if it can't be read so
+     *         there is no way to know.
+     */
+    private static Set<String> readSegments(Path file) {
+        if (!Files.exists(file)) return Set.of();
+        try (InputStream in = new BufferedInputStream(
+            Files.newInputStream(file)
+        )) {
+            if (!BinaryReader.isBinary(in)) return Set.of();
+            return Game.readSegments(new BinaryReader(in));
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Forces the list of files in a folder out to the disk, so that files
+     * which were just made or moved in it are still there after a crash.
+     * Some systems can't open a folder to do this and don't need it done,
+     * so if it doesn't work then nothing happens.
+     * @param folder is the folder.
+     */
+    private static void forceFolder(Path folder) {
+        if (folder == null || !Files.isDirectory(folder)) return;
+        try (FileChannel channel = FileChannel.open(
+            folder,
+            StandardOpenOption.READ
+        )) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Nothing to do since the folder is as safe as it can be.
+        }
+    }
 }
@@ -3,6 +3,8 @@ package peony;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
 import java.nio.file.Path;
 
 /**
@@ -188,6 +190,20 @@ public class Point implements Artefact {
         this.y *= value;
     }
 
+    /**
+     * Creates a new point which is this point multiplied by a matrix.
+     * @param matrix is the matrix to transform it with.
+     * @return the new point.
+     */
+    public Point transform(AffineTransform matrix) {
+        return new Point(
+            (float)(matrix.getScaleX() * this.x + matrix.getShearX() * this.y +
+                matrix.getTranslateX()),
+            (float)(matrix.getShearY() * this.x + matrix.getScaleY() * this.y +
+                matrix.getTranslateY())
+        );
+    }
+
     /**
      * Creates a point that is radius distance from (0, 0) at the given angle.
      * @param angle  is the angle to be in.
@@ -216,6 +232,40 @@ public class Point implements Artefact {
         }
     }
 
+    /**
+     * Reads a point from a json reader that is up to a point object.
+     * @param in is the json reader.
+     * @return a result with the point if it had both it's coordinates.
+     */
+    public static Result<Point> read(JsonReader in) {
+        Float x = null;
+        Float y = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "x":
+                    x = in.nextFloat();
+                    break;
+                case "y":
+                    y = in.nextFloat();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        if (x == null || y == null) return Result.fail("Invalid point json.");
+        return Result.ok(new Point(x, y));
+    }
+
+    @Override
+    public void write(JsonWriter out, Path path) throws IOException {
+        out.beginObject();
+        out.name("x").value(this.x);
+        out.name("y").value(this.y);
+        out.endObject();
+    }
+
     @Override
     public JSONObject toJson(Path path) {
         JSONObject json = new JSONObject();
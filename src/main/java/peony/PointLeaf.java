@@ -3,6 +3,7 @@ package peony;
 import org.json.JSONObject;
 
 import java.awt.*;
+import java.io.IOException;
 import java.nio.file.Path;
 
 /**
@@ -38,6 +39,11 @@ public class PointLeaf extends Leaf {
         return point.length() < PointLeaf.SELECT_DISTANCE;
     }
 
+    @Override
+    protected Rectangle calculateLocalBounds() {
+        return new Rectangle(new Point(PointLeaf.SELECT_DISTANCE * 2));
+    }
+
     @Override
     public void renderParticular(Renderer r) {
         Point top = new Point(0, -PointLeaf.POINT_SIZE);
@@ -54,6 +60,35 @@ public class PointLeaf extends Leaf {
         return "point";
     }
 
+    @Override
+    protected Leaf copyParticular() {
+        return new PointLeaf();
+    }
+
+    @Override
+    protected void writeFields(JsonWriter out, Path path) throws IOException {
+        out.name("type").value(PointLeaf.TITLE);
+    }
+
+    @Override
+    protected void writeFields(
+        BinaryWriter out,
+        Path path
+    ) throws IOException {
+        out.writeString(PointLeaf.TITLE);
+    }
+
+    /**
+     * Reads the particular stuff of a point leaf from the binary format, of
+     * which there is none.
+     * @param in   is the binary reader.
+     * @param root is the folder the game file is in.
+     * @return the new leaf.
+     */
+    public static Result<Leaf> read(BinaryReader in, Path root) {
+        return Result.ok(new PointLeaf());
+    }
+
     @Override
     public JSONObject toJson(Path path) {
         JSONObject json = super.toJson(path);
@@ -0,0 +1,13 @@
+package peony;
+
+/**
+ * Listens for progress while a game is being loaded or saved.
+ */
+public interface ProgressListener {
+    /**
+     * Called each time a whole layout has been loaded or saved. It gets
+     * called from whatever thread is doing the loading or saving.
+     * @param layout is the layout that is done.
+     */
+    public void layoutDone(Layout layout);
+}
@@ -1,5 +1,10 @@
 package peony;
 
+import java.awt.geom.AffineTransform;
+
+/**
+ * An axis aligned rectangle.
+ */
 public class Rectangle {
     private final Point pos;
     private final Point size;
@@ -77,6 +82,71 @@ public class Rectangle {
             pos.getY() < this.pos.getY() + this.size.getY();
     }
 
+    /**
+     * Tells you if this rectangle overlaps another one at all.
+     * @param other is the other rectangle which must be in the same
+     *              coordinate space.
+     * @return true iff they overlap.
+     */
+    public boolean intersects(Rectangle other) {
+        return this.pos.getX() <= other.pos.getX() + other.size.getX() &&
+            other.pos.getX() <= this.pos.getX() + this.size.getX() &&
+            this.pos.getY() <= other.pos.getY() + other.size.getY() &&
+            other.pos.getY() <= this.pos.getY() + this.size.getY();
+    }
+
+    /**
+     * Creates the smallest rectangle that contains both this rectangle and
+     * another one.
+     * @param other is the other rectangle.
+     * @return the new rectangle covering both.
+     */
+    public Rectangle union(Rectangle other) {
+        float left = Math.min(this.pos.getX(), other.pos.getX());
+        float top = Math.min(this.pos.getY(), other.pos.getY());
+        float right = Math.max(
+            this.pos.getX() + this.size.getX(),
+            other.pos.getX() + other.size.getX()
+        );
+        float bottom = Math.max(
+            this.pos.getY() + this.size.getY(),
+            other.pos.getY() + other.size.getY()
+        );
+        return new Rectangle(
+            new Point(left, top),
+            new Point(right - left, bottom - top)
+        );
+    }
+
+    /**
+     * Creates the smallest axis aligned rectangle that contains this
+     * rectangle after it has been put through a matrix.
+     * @param matrix is the matrix to transform the rectangle with.
+     * @return the new rectangle which covers the transformed one.
+     */
+    public Rectangle transform(AffineTransform matrix) {
+        float left = this.pos.getX();
+        float top = this.pos.getY();
+        float right = left + this.size.getX();
+        float bottom = top + this.size.getY();
+        float[] corners = {left, top, right, top, right, bottom, left, bottom};
+        matrix.transform(corners, 0, corners, 0, 4);
+        float minX = corners[0];
+        float minY = corners[1];
+        float maxX = corners[0];
+        float maxY = corners[1];
+        for (int i = 2; i < corners.length; i += 2) {
+            minX = Math.min(minX, corners[i]);
+            minY = Math.min(minY, corners[i + 1]);
+            maxX = Math.max(maxX, corners[i]);
+            maxY = Math.max(maxY, corners[i + 1]);
+        }
+        return new Rectangle(
+            new Point(minX, minY),
+            new Point(maxX - minX, maxY - minY)
+        );
+    }
+
     @Override
     public String toString() {
         return String.format("(%s, %s)", this.pos, this.size);
@@ -2,14 +2,23 @@ package peony;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A renderer that allows you to stack transformations and then let rendering
- * functions use that by default.
+ * functions use that by default. The stack is kept pre-multiplied so that the
+ * top of it is always the whole transformation from the current coordinate
+ * space to the screen, meaning every point only gets transformed once no
+ * matter how deep the stack is. It also knows which part of the screen is
+ * being drawn to so that things which are entirely outside of it can be
+ * skipped, and keeps count of how much stuff was skipped. It can also be told
+ * to leave out one leaf and everything below it, which is used to draw the
+ * whole layout except the bit that is being edited.
  */
 public class Renderer {
+    public static final float CULL_MARGIN = 16;
     private static final Stroke DASH = new BasicStroke(
         1,
         BasicStroke.CAP_BUTT,
@@ -18,10 +27,17 @@ public class Renderer {
         new float[]{2},
         0
     );
-    private final Deque<Transformation> transformations = new ArrayDeque<>();
+    private final List<AffineTransform> stack = new ArrayList<>();
+    private final AffineTransform imageTransform = new AffineTransform();
     private final Graphics2D g;
+    private final Rectangle viewport;
+    private final FontMetrics metrics;
     private final Leaf selectedLeaf;
     private final Point selectedPoint;
+    private Leaf excluded = null;
+    private int depth = 0;
+    private int drawn = 0;
+    private int culled = 0;
 
     /**
      * Creates the renderer with the graphics object it will use internally.
@@ -33,6 +49,18 @@ public class Renderer {
         this.g = g;
         this.selectedLeaf = selectedLeaf;
         this.selectedPoint = selectedPoint;
+        Shape clip = g.getClip();
+        if (clip != null) {
+            Rectangle2D bounds = clip.getBounds2D();
+            this.viewport = new Rectangle(
+                new Point((float)bounds.getX(), (float)bounds.getY()),
+                new Point((float)bounds.getWidth(), (float)bounds.getHeight())
+            );
+        } else {
+            this.viewport = null;
+        }
+        this.metrics = g.getFontMetrics();
+        this.stack.add(new AffineTransform());
     }
 
     /**
@@ -53,20 +81,138 @@ public class Renderer {
         return this.selectedPoint == selected;
     }
 
+    /**
+     * Sets a leaf that should not get drawn, and nor should the line to it
+     * from it's parent or any of it's children.
+     * @param excluded is the leaf to leave out, or null to draw everything.
+     */
+    public void setExcluded(Leaf excluded) {
+        this.excluded = excluded;
+    }
+
+    /**
+     * Tells you if a leaf is the one being left out.
+     * @param leaf is the leaf to check.
+     * @return true iff the leaf should not be drawn.
+     */
+    public boolean isExcluded(Leaf leaf) {
+        return this.excluded != null && this.excluded == leaf;
+    }
+
     /**
      * Pushes a transformation onto the stack so that it will modify the
      * rendering functions.
      * @param t is the transformation to add.
      */
     public void push(Transformation t) {
-        this.transformations.push(t);
+        this.pushMatrix(t.getMatrix());
+    }
+
+    /**
+     * Pushes a matrix onto the stack in the same way as a transformation.
+     * @param matrix is the matrix to add.
+     */
+    public void pushMatrix(AffineTransform matrix) {
+        AffineTransform current = this.current();
+        this.depth++;
+        if (this.depth == this.stack.size()) {
+            this.stack.add(new AffineTransform());
+        }
+        AffineTransform next = this.stack.get(this.depth);
+        next.setTransform(current);
+        next.concatenate(matrix);
     }
 
     /**
      * Removes the latest transformation from the stack after use.
      */
     public void pop() {
-        this.transformations.pop();
+        this.depth--;
+    }
+
+    /**
+     * Tells you if anything inside the given bounds could end up on the part
+     * of the screen being drawn to, counting the name labels that stick out
+     * of them. If the graphics object has no clip then everything is
+     * visible.
+     * @param bounds is the bounds in the current coordinate space.
+     * @param label  is the number of characters in the longest name of the
+     *               leaves in the bounds.
+     * @return true if it might be visible and false if it's definitely not.
+     */
+    public boolean isVisible(Rectangle bounds, int label) {
+        if (this.viewport == null) return true;
+        Rectangle screen = bounds.transform(this.current());
+        return Renderer.pad(screen, label, this.metrics).intersects(
+            this.viewport
+        );
+    }
+
+    /**
+     * Grows a rectangle in screen space that some leaves are in so that it
+     * also covers the stuff that gets drawn at a fixed size in pixels no
+     * matter how zoomed in it is, which is their name labels sticking out to
+     * the right and up, and the circles and markers for points which are
+     * covered by the margin.
+     * @param area    is the rectangle in screen space.
+     * @param label   is the number of characters in the longest name of the
+     *                leaves in it.
+     * @param metrics is the font metrics of the font the names are drawn in.
+     * @return the bigger rectangle.
+     */
+    public static Rectangle pad(
+        Rectangle area,
+        int label,
+        FontMetrics metrics
+    ) {
+        float advance = Math.max(
+            metrics.getMaxAdvance(),
+            metrics.charWidth('W')
+        );
+        float ascent = metrics.getAscent();
+        return new Rectangle(
+            new Point(
+                area.getPos().getX() - Renderer.CULL_MARGIN,
+                area.getPos().getY() - Renderer.CULL_MARGIN - ascent
+            ),
+            new Point(
+                area.getSize().getX() + Renderer.CULL_MARGIN * 2 +
+                    label * advance,
+                area.getSize().getY() + Renderer.CULL_MARGIN * 2 + ascent +
+                    metrics.getDescent()
+            )
+        );
+    }
+
+    /**
+     * Records that a leaf got drawn.
+     */
+    public void countDrawn() {
+        this.drawn++;
+    }
+
+    /**
+     * Records that some leaves got skipped because they were not visible.
+     * @param n is the number of leaves skipped.
+     */
+    public void countCulled(int n) {
+        this.culled += n;
+    }
+
+    /**
+     * Gives you the number of leaves that have been drawn so far.
+     * @return the number drawn.
+     */
+    public int getDrawnCount() {
+        return this.drawn;
+    }
+
+    /**
+     * Gives you the number of leaves that have been skipped so far.
+     * @return the number skipped.
+     */
+    public int getCulledCount() {
+        return this.culled;
     }
 
     /**
@@ -110,14 +256,14 @@ public class Renderer {
      * @param rectangle is the rectangle to draw.
      */
     public void drawRectangle(Rectangle rectangle) {
-        Point tl = this.transform(rectangle.getPos());
-        Point tr = this.transform(
-            rectangle.getPos().plus(new Point(rectangle.getSize().getX(), 0))
-        );
-        Point br = this.transform(rectangle.getPos().plus(rectangle.getSize()));
-        Point bl = this.transform(
-            rectangle.getPos().plus(new Point(0, rectangle.getSize().getY()))
-        );
+        float left = rectangle.getPos().getX();
+        float top = rectangle.getPos().getY();
+        float right = left + rectangle.getSize().getX();
+        float bottom = top + rectangle.getSize().getY();
+        Point tl = this.transform(left, top);
+        Point tr = this.transform(right, top);
+        Point br = this.transform(right, bottom);
+        Point bl = this.transform(left, bottom);
         g.drawLine(tl.getXi(), tl.getYi(), tr.getXi(), tr.getYi());
         g.drawLine(tr.getXi(), tr.getYi(), br.getXi(), br.getYi());
         g.drawLine(br.getXi(), br.getYi(), bl.getXi(), bl.getYi());
@@ -146,19 +292,88 @@ public class Renderer {
     public void drawImage(Image image) {
         int width = image.getWidth(null);
         int height = image.getHeight(null);
-        Rectangle dimensions =  new Rectangle(new Point(width, height));
-        Point t = this.transform(dimensions.getPos());
-        Point corner = this.transform(dimensions.getTopRightCorner());
-        corner.subtract(t);
-        AffineTransform tx = AffineTransform.getRotateInstance(
-            corner.angle(),
-            t.getX(),
-            t.getY()
+        this.imageTransform.setTransform(this.current());
+        this.imageTransform.translate(-width / 2.0, -height / 2.0);
+        this.g.drawImage(image, this.imageTransform, null);
+    }
+
+    /**
+     * Draws a pic at origin using whichever level of it's mipmap is closest
+     * to the size it is going to end up on the screen.
+     * @param image is the pic.
+     */
+    public void drawImage(Mipmap image) {
+        Image level = image.getLevel(image.getLevelFor(this.getScale()));
+        double scaleX = (double)image.getWidth() / level.getWidth(null);
+        double scaleY = (double)image.getHeight() / level.getHeight(null);
+        this.imageTransform.setTransform(this.current());
+        this.imageTransform.translate(
+            -image.getWidth() / 2.0,
+            -image.getHeight() / 2.0
+        );
+        this.imageTransform.scale(scaleX, scaleY);
+        this.g.drawImage(level, this.imageTransform, null);
+    }
+
+    /**
+     * Draws part of a pic at origin using whichever level of it's mipmap is
+     * closest to the size it is going to end up on the screen, as long as
+     * that level doesn't shrink the part so much that it gets mixed up with
+     * what is around it.
+     * @param image  is the pic.
+     * @param source is the part of the full size pic to draw, in pixels.
+     */
+    public void drawImage(Mipmap image, Rectangle source) {
+        Image level = image.getLevel(
+            image.getLevelFor(this.getScale(), source)
+        );
+        double fx = (double)level.getWidth(null) / image.getWidth();
+        double fy = (double)level.getHeight(null) / image.getHeight();
+        int width = source.getSize().getXi();
+        int height = source.getSize().getYi();
+        int left = (int)Math.round(source.getPos().getX() * fx);
+        int top = (int)Math.round(source.getPos().getY() * fy);
+        int right = Math.max(
+            left + 1,
+            (int)Math.round((source.getPos().getX() + width) * fx)
         );
-        tx.translate(t.getX(), t.getY());
-        float scale = corner.length() / width;
-        tx.scale(scale, scale);
-        this.g.drawImage(image, tx, null);
+        int bottom = Math.max(
+            top + 1,
+            (int)Math.round((source.getPos().getY() + height) * fy)
+        );
+        this.imageTransform.setTransform(this.current());
+        this.imageTransform.translate(-width / 2.0, -height / 2.0);
+        this.imageTransform.scale(
+            (double)width / (right - left),
+            (double)height / (bottom - top)
+        );
+        AffineTransform old = this.g.getTransform();
+        this.g.transform(this.imageTransform);
+        this.g.drawImage(
+            level,
+            0,
+            0,
+            right - left,
+            bottom - top,
+            left,
+            top,
+            right,
+            bottom,
+            null
+        );
+        this.g.setTransform(old);
+    }
+
+    /**
+     * Tells you how much stuff drawn in the current coordinate space gets
+     * scaled by on the way to the actual pixels, including the graphics
+     * object's own transform which has the screen's scaling in it.
+     * @return the scale, which is averaged if it is not the same both ways.
+     */
+    public double getScale() {
+        double determinant = this.current().getDeterminant() *
+            this.g.getTransform().getDeterminant();
+        return Math.sqrt(Math.abs(determinant));
     }
 
     /**
@@ -180,10 +395,30 @@ public class Renderer {
      * @return the natural version.
      */
     private Point transform(Point in) {
-        Point transformed = new Point(in);
-        for (Transformation t: this.transformations) {
-            transformed = t.out(transformed);
-        }
-        return transformed;
+        return this.transform(in.getX(), in.getY());
+    }
+
+    /**
+     * Same as the other transform but you give it the components directly so
+     * you don't have to make a point first.
+     * @param x is the x component of the point to convert.
+     * @param y is the y component of the point to convert.
+     * @return the natural version.
+     */
+    private Point transform(float x, float y) {
+        AffineTransform m = this.current();
+        return new Point(
+            (float)(m.getScaleX() * x + m.getShearX() * y + m.getTranslateX()),
+            (float)(m.getShearY() * x + m.getScaleY() * y + m.getTranslateY())
+        );
+    }
+
+    /**
+     * Gives you the matrix at the top of the stack which is all the pushed
+     * transformations multiplied together.
+     * @return the current matrix.
+     */
+    private AffineTransform current() {
+        return this.stack.get(this.depth);
     }
 }
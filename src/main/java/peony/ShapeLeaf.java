@@ -1,9 +1,11 @@
 package peony;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.awt.*;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
@@ -38,6 +40,7 @@ public class ShapeLeaf extends Leaf {
      *            space.
      * @return the found point if any.
      */
+    @Override
     public Point getPointByPosition(Point pos) {
         for (Point point: this.points) {
             if (point.minus(pos).length() <= ShapeLeaf.POINT_RADIUS) {
@@ -66,6 +69,7 @@ public class ShapeLeaf extends Leaf {
         }
         if (kill != -1) {
             this.points.remove(kill);
+            this.invalidateBounds();
             return this.points.get(kill == 0 ? n - 2 : kill - 1);
         }
         return null;
@@ -90,6 +94,7 @@ public class ShapeLeaf extends Leaf {
         Point next = this.points.get(index == n - 1 ? 0 : index + 1);
         Point mid = point.plus(next).times(0.5f);
         this.points.add(index + 1, mid);
+        this.invalidateBounds();
         return mid;
     }
 
@@ -103,10 +108,11 @@ public class ShapeLeaf extends Leaf {
             mid.add(point);
         }
         mid.multiply(1.0f / this.points.size());
-        this.getTransformation().getTranslation().add(mid);
+        this.getTransformation().translate(mid);
         for (Point point: this.points) {
             point.subtract(mid);
         }
+        this.invalidateBounds();
     }
 
     /**
@@ -116,25 +122,69 @@ public class ShapeLeaf extends Leaf {
      * @return the result containing the shape leaf or error.
      */
     public static Result<Leaf> fromJson(JSONObject json, Path root) {
-        // TODO: stuff.
-        return Result.ok(new ShapeLeaf());
+        ShapeLeaf shape = new ShapeLeaf();
+        if (!json.has("points")) return Result.ok(shape);
+        List<Point> points = new ArrayList<>();
+        try {
+            JSONArray pointList = json.getJSONArray("points");
+            for (int i = 0; i < pointList.length(); i++) {
+                Result<Point> point = Point.fromJson(
+                    pointList.getJSONObject(i)
+                );
+                if (!point.success()) return Result.fail(point.message());
+                points.add(point.value());
+            }
+        } catch (JSONException e) {
+            return Result.fail("Invalid json for shapeleaf: %s", json);
+        }
+        return shape.setPoints(points);
     }
 
-    @Override
-    public Pair<Leaf, Point> hit(Point point) {
-        Point t = this.getTransformation().in(point);
-        for (Leaf child: this.getChildren()) {
-            Pair<Leaf, Point> found = child.hit(t);
-            if (found.getA() != null) return found;
+    /**
+     * Reads the particular stuff of a shape leaf from the binary format,
+     * which is the number of points and then all their coordinates packed
+     * together.
+     * @param in   is the binary reader.
+     * @param root is the folder the game file is in.
+     * @return the new leaf or an error if there are not enough points.
+     * @throws IOException if the reading fails.
+     */
+    public static Result<Leaf> read(
+        BinaryReader in,
+        Path root
+    ) throws IOException {
+        int n = in.readVarint();
+        List<Point> points = new ArrayList<>(Math.min(n, 1024));
+        for (int i = 0; i < n; i++) {
+            float x = in.readFloat();
+            float y = in.readFloat();
+            points.add(new Point(x, y));
         }
-        if (this.insideLocal(t) && !this.getLocked()) {
-            return new Pair<>(this, this.getPointByPosition(t));
+        return new ShapeLeaf().setPoints(points);
+    }
+
+    /**
+     * Replaces all of the shape's points.
+     * @param points is the new points.
+     * @return a result with this shape in it, or an error if there are not
+     *         enough points.
+     */
+    private Result<Leaf> setPoints(List<Point> points) {
+        if (points.size() < ShapeLeaf.MIN_POINTS) {
+            return Result.fail(
+                "Shapes need at least %d points.",
+                ShapeLeaf.MIN_POINTS
+            );
         }
-        return new Pair<>(null, null);
+        this.points.clear();
+        this.points.addAll(points);
+        this.invalidateBounds();
+        return Result.ok(this);
     }
 
     @Override
     public boolean insideLocal(Point point) {
+        if (!this.getLocalBounds().contains(point)) return false;
         int hits = 0;
         for (int i = 0; i < this.points.size(); i++) {
             Point current = this.points.get(i);
@@ -155,6 +205,31 @@ public class ShapeLeaf extends Leaf {
         return hits % 2 == 1;
     }
 
+    @Override
+    protected Rectangle calculateLocalBounds() {
+        Point first = this.points.get(0);
+        float minX = first.getX();
+        float minY = first.getY();
+        float maxX = first.getX();
+        float maxY = first.getY();
+        for (Point point: this.points) {
+            minX = Math.min(minX, point.getX());
+            minY = Math.min(minY, point.getY());
+            maxX = Math.max(maxX, point.getX());
+            maxY = Math.max(maxY, point.getY());
+        }
+        return new Rectangle(
+            new Point(
+                minX - ShapeLeaf.POINT_RADIUS,
+                minY - ShapeLeaf.POINT_RADIUS
+            ),
+            new Point(
+                maxX - minX + ShapeLeaf.POINT_RADIUS * 2,
+                maxY - minY + ShapeLeaf.POINT_RADIUS * 2
+            )
+        );
+    }
+
     @Override
     public void renderParticular(Renderer r) {
         if (this.getLocked()) {
@@ -184,6 +259,35 @@ public class ShapeLeaf extends Leaf {
         return "shape";
     }
 
+    @Override
+    protected Leaf copyParticular() {
+        ShapeLeaf copy = new ShapeLeaf();
+        copy.points.clear();
+        for (Point point: this.points) copy.points.add(new Point(point));
+        return copy;
+    }
+
+    @Override
+    protected void writeFields(JsonWriter out, Path path) throws IOException {
+        out.name("type").value(ShapeLeaf.TITLE);
+        out.name("points").beginArray();
+        for (Point point: this.points) point.write(out, path);
+        out.endArray();
+    }
+
+    @Override
+    protected void writeFields(
+        BinaryWriter out,
+        Path path
+    ) throws IOException {
+        out.writeString(ShapeLeaf.TITLE);
+        out.writeVarint(this.points.size());
+        for (Point point: this.points) {
+            out.writeFloat(point.getX());
+            out.writeFloat(point.getY());
+        }
+    }
+
     @Override
     public JSONObject toJson(Path path) {
         JSONObject json = super.toJson(path);
@@ -0,0 +1,201 @@
+package peony;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of roughly where in world space each leaf of a layout is so
+ * that finding the leaf under the mouse does not have to look at every single
+ * leaf. The world is cut up into a grid of square cells and each leaf is put
+ * into every cell that it's world space bounds touch. When leaves move or
+ * change shape they just get marked, and they are put into their new cells
+ * the next time something is looked up.
+ */
+public class SpatialIndex {
+    public static final float CELL_SIZE = 64;
+    public static final int MAX_CELLS = 256;
+    private final Map<Long, List<Leaf>> cells = new HashMap<>();
+    private final Map<Leaf, int[]> entries = new HashMap<>();
+    private final Set<Leaf> large = new HashSet<>();
+    private final Set<Leaf> stale = new HashSet<>();
+    private final Layout layout;
+
+    /**
+     * Creates an empty index for a layout.
+     * @param layout is the layout whose leaves are going to be in the index.
+     */
+    public SpatialIndex(Layout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * Marks a leaf as having moved or changed shape so it's cells need to be
+     * worked out again.
+     * @param leaf is the leaf that changed.
+     */
+    public void mark(Leaf leaf) {
+        this.stale.add(leaf);
+    }
+
+    /**
+     * Marks a leaf and everything below it as having changed.
+     * @param leaf is the top of the bunch of leaves that changed.
+     */
+    public void markSubtree(Leaf leaf) {
+        this.stale.add(leaf);
+        for (Leaf child: leaf.getChildren()) this.markSubtree(child);
+    }
+
+    /**
+     * Forgets about every leaf, which is for when a layout's leaves get
+     * unloaded.
+     */
+    public void clear() {
+        this.cells.clear();
+        this.entries.clear();
+        this.large.clear();
+        this.stale.clear();
+    }
+
+    /**
+     * Finds the leaf that contains a point in world space, with the same
+     * rules as Leaf.hit which means locked leaves are ignored and if more
+     * than one leaf contains the point then the one that gets drawn last
+     * wins.
+     * @param point is the point in world space.
+     * @return the found leaf and the point of the leaf that was hit if it
+     *         has points, either of which can be null.
+     */
+    public Pair<Leaf, Point> hit(Point point) {
+        this.refresh();
+        Leaf found = null;
+        long key = SpatialIndex.key(
+            SpatialIndex.cell(point.getX()),
+            SpatialIndex.cell(point.getY())
+        );
+        List<Leaf> cell = this.cells.getOrDefault(
+            key,
+            Collections.emptyList()
+        );
+        for (Leaf leaf: cell) found = SpatialIndex.better(found, leaf, point);
+        for (Leaf leaf: this.large) {
+            found = SpatialIndex.better(found, leaf, point);
+        }
+        if (found == null) return new Pair<>(null, null);
+        return new Pair<>(
+            found,
+            found.getPointByPosition(found.globalToLocal(point))
+        );
+    }
+
+    /**
+     * Puts all of the leaves that have been marked since last time into the
+     * right cells, and gets rid of ones that are not in the layout anymore.
+     */
+    private void refresh() {
+        for (Leaf leaf: this.stale) {
+            this.remove(leaf);
+            if (leaf.getLayout() == this.layout) this.add(leaf);
+        }
+        this.stale.clear();
+    }
+
+    /**
+     * Adds a leaf to all the cells it's bounds touch right now.
+     * @param leaf is the leaf to add.
+     */
+    private void add(Leaf leaf) {
+        Rectangle bounds = leaf.getWorldBounds();
+        float left = bounds.getPos().getX();
+        float top = bounds.getPos().getY();
+        float right = left + bounds.getSize().getX();
+        float bottom = top + bounds.getSize().getY();
+        if (!Float.isFinite(left) || !Float.isFinite(top) ||
+            !Float.isFinite(right) || !Float.isFinite(bottom)
+        ) {
+            this.large.add(leaf);
+            return;
+        }
+        int[] range = {
+            SpatialIndex.cell(left),
+            SpatialIndex.cell(top),
+            SpatialIndex.cell(right),
+            SpatialIndex.cell(bottom)
+        };
+        long count = (long)(range[2] - range[0] + 1) *
+            (range[3] - range[1] + 1);
+        if (count > SpatialIndex.MAX_CELLS) {
+            this.large.add(leaf);
+            return;
+        }
+        this.entries.put(leaf, range);
+        for (int x = range[0]; x <= range[2]; x++) {
+            for (int y = range[1]; y <= range[3]; y++) {
+                this.cells.computeIfAbsent(
+                    SpatialIndex.key(x, y),
+                    k -> new ArrayList<>()
+                ).add(leaf);
+            }
+        }
+    }
+
+    /**
+     * Removes a leaf from all the cells it is in if it's in any.
+     * @param leaf is the leaf to remove.
+     */
+    private void remove(Leaf leaf) {
+        this.large.remove(leaf);
+        int[] range = this.entries.remove(leaf);
+        if (range == null) return;
+        for (int x = range[0]; x <= range[2]; x++) {
+            for (int y = range[1]; y <= range[3]; y++) {
+                long key = SpatialIndex.key(x, y);
+                List<Leaf> cell = this.cells.get(key);
+                cell.remove(leaf);
+                if (cell.isEmpty()) this.cells.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Decides which of two leaves should win a hit on a point.
+     * @param current   is the best leaf found so far which can be null.
+     * @param candidate is the leaf that might be better.
+     * @param point     is the world space point being hit.
+     * @return whichever leaf wins.
+     */
+    private static Leaf better(Leaf current, Leaf candidate, Point point) {
+        if (candidate.getLocked()) return current;
+        if (current != null && !candidate.isDrawnAfter(current)) {
+            return current;
+        }
+        if (candidate.insideLocal(candidate.globalToLocal(point))) {
+            return candidate;
+        }
+        return current;
+    }
+
+    /**
+     * Gives you the grid cell that a world space coordinate is in.
+     * @param value is the coordinate.
+     * @return the cell coordinate.
+     */
+    private static int cell(float value) {
+        return (int)Math.floor(value / SpatialIndex.CELL_SIZE);
+    }
+
+    /**
+     * Packs the coordinates of a cell into a single key.
+     * @param x is the x coordinate of the cell.
+     * @param y is the y coordinate of the cell.
+     * @return the key.
+     */
+    private static long key(int x, int y) {
+        return ((long)x << 32) | (y & 0xffffffffL);
+    }
+}
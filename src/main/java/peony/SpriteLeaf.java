@@ -2,15 +2,19 @@ package peony;
 
 import org.json.JSONObject;
 
+import javax.swing.*;
 import java.awt.geom.AffineTransform;
+import java.io.IOException;
 import java.nio.file.Path;
 
 /**
- * A leaf that displays a sprite from the game's spritesheet.
+ * A leaf that displays a sprite from the game's spritesheet. Until the page
+ * the sprite is on has been decoded it draws a little placeholder instead.
  */
 public class SpriteLeaf extends Leaf {
     public static final String TITLE = "sprite";
     public static final float SELECT_RADIUS = 16;
+    private final Runnable ready = this::pageReady;
     TextureAtlas.Region sprite;
 
     /**
@@ -34,6 +38,7 @@ public class SpriteLeaf extends Leaf {
      */
     public void setSprite(TextureAtlas.Region sprite) {
         this.sprite = sprite;
+        this.invalidateBounds();
     }
 
     /**
@@ -49,21 +54,45 @@ public class SpriteLeaf extends Leaf {
         return Result.ok(new SpriteLeaf());
     }
 
+    /**
+     * Gets called on a background thread once the sprite's page has been
+     * decoded, and tells the layout to redraw the leaf on the event thread.
+     */
+    private void pageReady() {
+        SwingUtilities.invokeLater(() -> {
+            Layout layout = this.getLayout();
+            if (layout != null) layout.redrawn(this);
+        });
+    }
+
     @Override
     public boolean insideLocal(Point point) {
         if (this.sprite == null) {
             return point.length() < SpriteLeaf.SELECT_RADIUS;
         }
-        return Renderer.getDimensions(this.sprite.image).contains(point);
+        return this.getLocalBounds().contains(point);
+    }
+
+    @Override
+    protected Rectangle calculateLocalBounds() {
+        if (this.sprite == null) {
+            return new Rectangle(new Point(SpriteLeaf.SELECT_RADIUS * 2));
+        }
+        return new Rectangle(this.sprite.source.getSize());
     }
 
     @Override
     public void renderParticular(Renderer r) {
         this.normalColour(r);
         if (this.sprite != null) {
-            r.drawImage(this.sprite.image);
+            Mipmap page = this.sprite.getPageNow(this.ready);
+            if (page != null) {
+                r.drawImage(page, this.sprite.source);
+            } else {
+                r.drawCircle(new Point(), SpriteLeaf.SELECT_RADIUS);
+            }
             if (r.isLeafSelected(this)) {
-                r.drawRectangle(Renderer.getDimensions(this.sprite.image));
+                r.drawRectangle(this.getLocalBounds());
             }
         }
     }
@@ -73,6 +102,37 @@ public class SpriteLeaf extends Leaf {
         return "sprite";
     }
 
+    @Override
+    protected Leaf copyParticular() {
+        SpriteLeaf copy = new SpriteLeaf();
+        copy.sprite = this.sprite;
+        return copy;
+    }
+
+    @Override
+    protected void writeFields(JsonWriter out, Path path) throws IOException {
+        out.name("type").value(SpriteLeaf.TITLE);
+    }
+
+    @Override
+    protected void writeFields(
+        BinaryWriter out,
+        Path path
+    ) throws IOException {
+        out.writeString(SpriteLeaf.TITLE);
+    }
+
+    /**
+     * Reads the particular stuff of a sprite leaf from the binary format, of
+     * which there is none.
+     * @param in   is the binary reader.
+     * @param root is the folder the game file is in.
+     * @return the new leaf.
+     */
+    public static Result<Leaf> read(BinaryReader in, Path root) {
+        return Result.ok(new SpriteLeaf());
+    }
+
     @Override
     public JSONObject toJson(Path path) {
         JSONObject json = super.toJson(path);
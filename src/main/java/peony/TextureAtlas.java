@@ -3,35 +3,147 @@ package peony;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.io.*;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Meant to rip off the libgdx texture atlas format.
  */
 public class TextureAtlas implements Artefact {
+    /**
+     * A page image of the atlas, which might still be getting decoded, and
+     * the sprites that are waiting for it. However many sprites are on the
+     * page and however many times they get drawn while they wait, the page
+     * only ever has one callback of it's own waiting on the image, and when
+     * the image is ready every sprite that was waiting gets told.
+     */
+    public static class Page {
+        private final CompletableFuture<ImageCache.Handle> handle;
+        private final Set<Runnable> waiting = new HashSet<>();
+        private boolean registered = false;
+
+        /**
+         * Creates the page.
+         * @param handle is the handle to the page image in the image cache
+         *               that will be, which is null if it failed to load.
+         */
+        public Page(CompletableFuture<ImageCache.Handle> handle) {
+            this.handle = handle;
+        }
+
+        /**
+         * Gives you the page image, waiting for it to finish decoding if it
+         * hasn't yet.
+         * @return the page or null if it failed to load.
+         */
+        public Mipmap get() {
+            ImageCache.Handle page = this.handle.join();
+            return page == null ? null : page.get();
+        }
+
+        /**
+         * Gives you the page image if it is ready to draw right now, without
+         * ever waiting. If it isn't ready then it gets got ready in the
+         * background, and the callback is called from another thread once
+         * it is, unless it fails. Asking again with the same callback while
+         * waiting doesn't make it get called more than once.
+         * @param ready is called when the page is ready if it wasn't.
+         * @return the page or null if it is not ready or failed to load.
+         */
+        public synchronized Mipmap getNow(Runnable ready) {
+            this.waiting.add(ready);
+            if (!this.handle.isDone()) {
+                if (!this.registered) {
+                    this.registered = true;
+                    this.handle.thenAccept((ImageCache.Handle page) ->
+                        this.arrived(page != null)
+                    );
+                }
+                return null;
+            }
+            ImageCache.Handle page = this.handle.getNow(null);
+            Mipmap image = page == null ?
+                null :
+                page.getNow(() -> this.arrived(true));
+            if (page == null || image != null) this.waiting.remove(ready);
+            return image;
+        }
+
+        /**
+         * Tells all of the sprites that were waiting for the page that it is
+         * ready, or just forgets about them if it failed to load.
+         * @param loaded is whether the page is ready.
+         */
+        private void arrived(boolean loaded) {
+            List<Runnable> ready;
+            synchronized (this) {
+                ready = new ArrayList<>(this.waiting);
+                this.waiting.clear();
+            }
+            if (loaded) for (Runnable callback: ready) callback.run();
+        }
+
+        /**
+         * Waits until the page image has been loaded or failed to load.
+         */
+        public void await() {
+            this.handle.join();
+        }
+    }
+
     /**
      * A texture atlas region which as you can see is pretty minimalistic
-     * compared to the libgdx version.
+     * compared to the libgdx version. It doesn't have it's own copy of the
+     * pixels, just the page image they are on and where on the page they
+     * are, so all the regions on a page share the page's memory. The page
+     * might still be getting decoded when the region is made, and it lives
+     * in the shared image cache so it can get thrown away and decoded again
+     * later.
      */
     public static class Region implements Comparable<Region> {
-        public final Image image;
+        public final Rectangle source;
         public final String name;
+        private final Page page;
 
         /**
          * Creates a region and sets the stuff that must be set.
-         * @param image is the image to do it with.
-         * @param name  is it's name.
+         * @param page   is the page image the region is on, which might not
+         *               be finished loading yet.
+         * @param source is the part of the page that is the region.
+         * @param name   is it's name.
          */
-        public Region(Image image, String name) {
-            this.image = image;
+        public Region(Page page, Rectangle source, String name) {
+            this.page = page;
+            this.source = source;
             this.name = name;
         }
 
+        /**
+         * Gives you the page image that the region is on, waiting for it to
+         * finish decoding if it hasn't yet. It comes as a mipmap so zoomed
+         * out sprites can be drawn from a smaller version of the page.
+         * @return the page or null if it failed to load.
+         */
+        public Mipmap getPage() {
+            return this.page.get();
+        }
+
+        /**
+         * Gives you the page image if it is ready to draw right now, without
+         * ever waiting. See Page.getNow for how the callback gets called,
+         * which is the same for every region on the page.
+         * @param ready is called when the page is ready if it wasn't, and
+         *              should be the same each time you ask.
+         * @return the page or null if it is not ready or failed to load.
+         */
+        public Mipmap getPageNow(Runnable ready) {
+            return this.page.getNow(ready);
+        }
+
         @Override
         public String toString() {
             return this.name;
@@ -48,62 +160,74 @@ public class TextureAtlas implements Artefact {
     private static final String[] tuple = new String[4];
     private final Path source;
     private final Map<String, Region> regions = new HashMap<>();
+    private final List<Page> pages = new ArrayList<>();
 
     /**
-     * Creates the texture atlas by giving it the file to read from.
+     * Creates the texture atlas by giving it the file to read from. Only the
+     * atlas file itself is read before this returns, and the page images get
+     * decoded all at once on the common pool. Sprites on a page that isn't
+     * ready yet draw a placeholder until it is.
      * @param file is the file to load it from.
      * @throws IOException if shit fucks up.
      */
     public TextureAtlas(File file) throws IOException
     {
         this.source = file.toPath();
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        Image current = null;
-        while (true) {
-            String line = reader.readLine();
-            if (line == null) break;
-            if (line.trim().length() == 0) {
-                current = null;
-            } else if (current == null) {
-                if (TextureAtlas.readTuple(reader) == 2) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            Page current = null;
+            while (true) {
+                String line = reader.readLine();
+                if (line == null) break;
+                if (line.trim().length() == 0) {
+                    current = null;
+                } else if (current == null) {
+                    if (TextureAtlas.readTuple(reader) == 2) {
+                        TextureAtlas.readTuple(reader);
+                    }
                     TextureAtlas.readTuple(reader);
-                }
-                TextureAtlas.readTuple(reader);
-                TextureAtlas.readValue(reader);
-                Result<Image> loadCurrent = TextureAtlas.loadImage(
-                    file.toPath(),
-                    Path.of(line)
-                );
-                if (loadCurrent.success()) current = loadCurrent.value();
-            } else {
-                TextureAtlas.readValue(reader);
-                TextureAtlas.readTuple(reader);
-                Point pos = new Point(
-                    Integer.parseInt(tuple[0]),
-                    Integer.parseInt(tuple[1])
-                );
-                TextureAtlas.readTuple(reader);
-                Point size = new Point(
-                    Integer.parseInt(tuple[0]),
-                    Integer.parseInt(tuple[1])
-                );
-                Image portion = TextureAtlas.subImage(
-                    current,
-                    new Rectangle(pos, size)
-                );
-                Region region = new Region(portion, line);
-                this.regions.put(region.name, region);
-                if (TextureAtlas.readTuple(reader) == 4) {
+                    TextureAtlas.readValue(reader);
+                    current = new Page(TextureAtlas.decodePage(
+                        file.toPath(),
+                        Path.of(line)
+                    ));
+                    this.pages.add(current);
+                } else {
+                    TextureAtlas.readValue(reader);
+                    TextureAtlas.readTuple(reader);
+                    Point pos = new Point(
+                        Integer.parseInt(tuple[0]),
+                        Integer.parseInt(tuple[1])
+                    );
+                    TextureAtlas.readTuple(reader);
+                    Point size = new Point(
+                        Integer.parseInt(tuple[0]),
+                        Integer.parseInt(tuple[1])
+                    );
+                    Region region = new Region(
+                        current,
+                        new Rectangle(pos, size),
+                        line
+                    );
+                    this.regions.put(region.name, region);
                     if (TextureAtlas.readTuple(reader) == 4) {
-                        TextureAtlas.readTuple(reader);
+                        if (TextureAtlas.readTuple(reader) == 4) {
+                            TextureAtlas.readTuple(reader);
+                        }
                     }
+                    TextureAtlas.readTuple(reader);
+                    TextureAtlas.readValue(reader);
                 }
-                TextureAtlas.readTuple(reader);
-                TextureAtlas.readValue(reader);
             }
         }
     }
 
+    /**
+     * Waits until all of the atlas's page images have finished decoding.
+     */
+    public void awaitPages() {
+        for (Page page: this.pages) page.await();
+    }
+
     /**
      * Gives you a region by name.
      * @param name is the name of the region to find.
@@ -122,49 +246,41 @@ public class TextureAtlas implements Artefact {
     }
 
     /**
-     * Creates a new image using a part of an existing image.
-     * @param full is the image to get the part out of.
-     * @param part is the part to get from the full image.
-     * @return the partial image as a new image.
+     * Loads an image with a filename that is relative to another file.
+     * @param root is the place where the first file is.
+     * @param file is where the file to open is relative to the first file.
+     * @return a result with a handle to the image in the shared image cache
+     *         if it could be got.
      */
-    public static Image subImage(Image full, Rectangle part) {
-        BufferedImage newImage = new BufferedImage(
-            part.getSize().getXi(),
-            part.getSize().getYi(),
-            BufferedImage.TYPE_4BYTE_ABGR
+    public static Result<ImageCache.Handle> loadImage(Path root, Path file) {
+        Path relative = root.getParent().resolve(file);
+        Result<ImageCache.Handle> image = ImageCache.getShared().acquire(
+            relative
         );
-        Graphics2D g = (Graphics2D)newImage.getGraphics();
-        g.drawImage(
-            full,
-            0,
-            0,
-            part.getSize().getXi(),
-            part.getSize().getYi(),
-            part.getPos().getXi(),
-            part.getPos().getYi(),
-            part.getPos().getXi() + part.getSize().getXi(),
-            part.getPos().getYi() + part.getSize().getYi(),
-            null
+        if (image.success()) return image;
+        return Result.fail(
+            "Texture atlas image failed to load: %s",
+            image.message()
         );
-        return newImage;
     }
 
     /**
-     * Loads an image with a filename that is relative to another file.
-     * @param root is the place where the first file is.
-     * @param file is where the file to open is relative to the first file.
-     * @return a result with the loaded file if it could be got.
+     * Starts decoding a page image on the common pool. If it fails to load
+     * then the error is printed and the page is null.
+     * @param root is the path to the atlas file.
+     * @param file is the page image's path relative to the atlas file.
+     * @return the page that will be.
      */
-    public static Result<Image> loadImage(Path root, Path file) {
-        File relative = root.getParent().resolve(file).toFile();
-        try {
-            return Result.ok(ImageIO.read(relative));
-        } catch (IOException e) {
-            return Result.fail(String.format(
-                "Texture atlas image failed to load: %s",
-                e.getMessage()
-            ));
-        }
+    private static CompletableFuture<ImageCache.Handle> decodePage(
+        Path root,
+        Path file
+    ) {
+        return CompletableFuture.supplyAsync(() -> {
+            Result<ImageCache.Handle> page = TextureAtlas.loadImage(root, file);
+            if (page.success()) return page.value();
+            System.err.println(page.message());
+            return null;
+        });
     }
 
     /**
@@ -3,15 +3,35 @@ package peony;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
 import java.nio.file.Path;
 
 /**
- * Represents a transformation into or out of a coordinate space.
+ * Represents a transformation into or out of a coordinate space. Internally it
+ * keeps the rotation and scale as a little matrix so that transforming points
+ * does not need any trigonometry, and the matrix only gets recalculated when
+ * the rotation or scale changes. The translation is read straight out of the
+ * translation point so it never goes stale. It can also have a listener which
+ * gets told about changes so that things built on top of it like the cached
+ * world transforms of leaves know when to recalculate.
  */
 public class Transformation implements Artefact {
     private final Point translation;
+    private final AffineTransform matrix = new AffineTransform();
+    private final AffineTransform inverse = new AffineTransform();
     private float rotation;
     private float scale;
+    private boolean dirty = true;
+    private Runnable listener = null;
+    private float m00;
+    private float m01;
+    private float m10;
+    private float m11;
+    private float n00;
+    private float n01;
+    private float n10;
+    private float n11;
 
     /**
      * Default constructor.
@@ -45,13 +65,34 @@ public class Transformation implements Artefact {
     }
 
     /**
-     * Gives you access to the translation.
+     * Gives you access to the translation. If you change it directly then the
+     * listener does not find out about it, so use setTranslation or
+     * translate instead.
      * @return the translation.
      */
     public Point getTranslation() {
         return this.translation;
     }
 
+    /**
+     * Sets the translation.
+     * @param x is the new x component of the translation.
+     * @param y is the new y component of the translation.
+     */
+    public void setTranslation(float x, float y) {
+        this.translation.set(x, y);
+        this.changed();
+    }
+
+    /**
+     * Moves the translation along by some amount.
+     * @param delta is the amount to add to the translation.
+     */
+    public void translate(Point delta) {
+        this.translation.add(delta);
+        this.changed();
+    }
+
     /**
      * Gives you the amount of rotation in the transformation.
      * @return the rotation.
@@ -66,6 +107,8 @@ public class Transformation implements Artefact {
      */
     public void setRotation(float rotation) {
         this.rotation = rotation;
+        this.dirty = true;
+        this.changed();
     }
 
     /**
@@ -82,6 +125,18 @@ public class Transformation implements Artefact {
      */
     public void setScale(float scale) {
         this.scale = scale;
+        this.dirty = true;
+        this.changed();
+    }
+
+    /**
+     * Sets the thing that gets told whenever this transformation changes.
+     * There is only one of them and normally it's the leaf that owns this
+     * transformation.
+     * @param listener is the thing to run after changes, or null for nothing.
+     */
+    public void setListener(Runnable listener) {
+        this.listener = listener;
     }
 
     /**
@@ -90,10 +145,12 @@ public class Transformation implements Artefact {
      * @return the version inside this coordinate space.
      */
     public Point in(Point point) {
-        Point newPoint = point.minus(this.translation);
-        return Point.fromAngle(
-            newPoint.angle() + this.rotation,
-            newPoint.length() / this.scale
+        if (this.dirty) this.refresh();
+        float x = point.getX() - this.translation.getX();
+        float y = point.getY() - this.translation.getY();
+        return new Point(
+            this.n00 * x + this.n01 * y,
+            this.n10 * x + this.n11 * y
         );
     }
 
@@ -104,10 +161,79 @@ public class Transformation implements Artefact {
      * @return the version outside of this coordinate space.
      */
     public Point out(Point point) {
-        return Point.fromAngle(
-            point.angle() - this.rotation,
-            point.length() * this.scale
-        ).plus(this.translation);
+        if (this.dirty) this.refresh();
+        return new Point(
+            this.m00 * point.getX() + this.m01 * point.getY() +
+                this.translation.getX(),
+            this.m10 * point.getX() + this.m11 * point.getY() +
+                this.translation.getY()
+        );
+    }
+
+    /**
+     * Gives you this transformation as a matrix that takes points out of the
+     * coordinate space, which is the same thing that the out method does.
+     * The matrix belongs to the transformation and gets overwritten the next
+     * time you call this so don't modify it or hang on to it.
+     * @return the matrix.
+     */
+    public AffineTransform getMatrix() {
+        if (this.dirty) this.refresh();
+        this.matrix.setTransform(
+            this.m00,
+            this.m10,
+            this.m01,
+            this.m11,
+            this.translation.getX(),
+            this.translation.getY()
+        );
+        return this.matrix;
+    }
+
+    /**
+     * Gives you the inverse of the matrix from getMatrix, ie one that takes
+     * points into this coordinate space like the in method does. Same deal
+     * with not modifying it.
+     * @return the inverse matrix.
+     */
+    public AffineTransform getInverse() {
+        if (this.dirty) this.refresh();
+        float x = this.translation.getX();
+        float y = this.translation.getY();
+        this.inverse.setTransform(
+            this.n00,
+            this.n10,
+            this.n01,
+            this.n11,
+            -(this.n00 * x + this.n01 * y),
+            -(this.n10 * x + this.n11 * y)
+        );
+        return this.inverse;
+    }
+
+    /**
+     * Lets the listener know that something changed if there is one.
+     */
+    private void changed() {
+        if (this.listener != null) this.listener.run();
+    }
+
+    /**
+     * Recalculates the rotation and scale part of the matrix and it's
+     * inverse. This is the only place that trigonometry gets done.
+     */
+    private void refresh() {
+        float cos = (float)Math.cos(this.rotation);
+        float sin = (float)Math.sin(this.rotation);
+        this.m00 = cos * this.scale;
+        this.m01 = sin * this.scale;
+        this.m10 = -sin * this.scale;
+        this.m11 = cos * this.scale;
+        this.n00 = cos / this.scale;
+        this.n01 = -sin / this.scale;
+        this.n10 = sin / this.scale;
+        this.n11 = cos / this.scale;
+        this.dirty = false;
     }
 
     /**
@@ -137,6 +263,76 @@ public class Transformation implements Artefact {
         return Result.fail(translation.message());
     }
 
+    /**
+     * Reads a transformation from a json reader that is up to one.
+     * @param in is the json reader.
+     * @return the transformation or an error message.
+     */
+    public static Result<Transformation> read(JsonReader in) {
+        Point translation = null;
+        Float rotation = null;
+        Float scale = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "translation":
+                    Result<Point> point = Point.read(in);
+                    if (!point.success()) return Result.fail(point.message());
+                    translation = point.value();
+                    break;
+                case "rotation":
+                    rotation = in.nextFloat();
+                    break;
+                case "scale":
+                    scale = in.nextFloat();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        if (translation == null || rotation == null || scale == null) {
+            return Result.fail("Invalid json for transformation.");
+        }
+        return Result.ok(new Transformation(translation, rotation, scale));
+    }
+
+    @Override
+    public void write(JsonWriter out, Path path) throws IOException {
+        out.beginObject();
+        out.name("translation");
+        this.translation.write(out, path);
+        out.name("rotation").value(this.rotation);
+        out.name("scale").value(this.scale);
+        out.endObject();
+    }
+
+    /**
+     * Writes the transformation out in the binary format.
+     * @param out is the binary writer.
+     * @throws IOException if the writing fails.
+     */
+    public void write(BinaryWriter out) throws IOException {
+        out.writeFloat(this.translation.getX());
+        out.writeFloat(this.translation.getY());
+        out.writeFloat(this.rotation);
+        out.writeFloat(this.scale);
+    }
+
+    /**
+     * Reads a transformation that was written in the binary format.
+     * @param in is the binary reader.
+     * @return the transformation.
+     * @throws IOException if the reading fails.
+     */
+    public static Transformation read(BinaryReader in) throws IOException {
+        float x = in.readFloat();
+        float y = in.readFloat();
+        float rotation = in.readFloat();
+        float scale = in.readFloat();
+        return new Transformation(new Point(x, y), rotation, scale);
+    }
+
     @Override
     public JSONObject toJson(Path path) {
         JSONObject json = new JSONObject();
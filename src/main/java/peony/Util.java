@@ -1,11 +1,13 @@
 package peony;
 
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.io.Reader;
+import java.nio.file.Files;
 import java.util.regex.Pattern;
 
 /**
@@ -23,24 +25,27 @@ public class Util {
      */
     public static Result<String> readFile(File file) {
         try {
-            return Result.ok(new Scanner(file).useDelimiter("\\Z").next());
+            String content = Files.readString(file.toPath());
+            if (content.isEmpty()) return Result.fail("File is empty.");
+            return Result.ok(content);
         } catch (IOException e) {
             return Result.fail(e.getMessage());
-        } catch (NoSuchElementException e) {
-            return Result.fail("File is empty.");
         }
     }
 
     /**
-     * Reads in a file as a json object.
+     * Reads in a file as a json object. It gets parsed straight from the
+     * file without reading it all into a string first.
      * @param file is the file to read.
      * @return a result object that contains the json object unless there was a
      *         problem.
      */
     public static Result<JSONObject> readJson(File file) {
-        Result<String> content = Util.readFile(file);
-        if (!content.success()) return Result.fail(content.message());
-        return Result.ok(new JSONObject(content.value()));
+        try (Reader reader = Files.newBufferedReader(file.toPath())) {
+            return Result.ok(new JSONObject(new JSONTokener(reader)));
+        } catch (IOException | JSONException e) {
+            return Result.fail(e.getMessage());
+        }
     }
 
     /**
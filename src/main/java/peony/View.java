@@ -8,6 +8,7 @@ import javax.swing.*;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentListener;
 import javax.swing.event.TreeSelectionListener;
+import javax.swing.filechooser.FileFilter;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
@@ -81,6 +82,12 @@ public class View extends JFrame {
     private final JMenu recentFilesButton = new JMenu("Recent Files");
     private final JMenuItem loadButton = new JMenuItem("Load");
     private final JMenuItem saveButton = new JMenuItem("Save");
+    private final JCheckBoxMenuItem lazyButton = new JCheckBoxMenuItem(
+        "Load Layouts Lazily"
+    );
+    private final JCheckBoxMenuItem splitSaveButton = new JCheckBoxMenuItem(
+        "Save Layouts Separately"
+    );
     private final JMenuItem quitButton = new JMenuItem("Exit");
     private final JMenuItem addImageButton = new JMenuItem("Image");
     private final JMenuItem addSpriteButton = new JMenuItem("Sprite");
@@ -106,6 +113,7 @@ public class View extends JFrame {
     private final JTextField gameName = new JTextField(10);
     private final JButton gameAtlas = new JButton("Select Atlas");
     private final JPanel gamePanel = new JPanel(new GridLayout(0, 2));
+    private final JProgressBar progress = new JProgressBar();
     private final JDialog gameDialog = new JDialog(
         this,
         "Game Properties",
@@ -138,6 +146,8 @@ public class View extends JFrame {
         fileMenu.add(this.recentFilesButton);
         fileMenu.add(this.loadButton);
         fileMenu.add(this.saveButton);
+        fileMenu.add(this.lazyButton);
+        fileMenu.add(this.splitSaveButton);
         fileMenu.add(this.gamePropertiesButton);
         fileMenu.add(this.quitButton);
         JMenu addMenu = new JMenu("Add");
@@ -155,9 +165,18 @@ public class View extends JFrame {
             "atlas"
         ));
         this.atlasChooser.setAcceptAllFileFilterUsed(false);
+        this.gameChooser.addChoosableFileFilter(new FileNameExtensionFilter(
+            "Json game files",
+            "json"
+        ));
+        this.gameChooser.addChoosableFileFilter(new FileNameExtensionFilter(
+            "Binary game files",
+            BinaryWriter.EXTENSION
+        ));
         this.gameChooser.setFileFilter(new FileNameExtensionFilter(
             "Readable game files",
-            "json"
+            "json",
+            BinaryWriter.EXTENSION
         ));
         this.gameChooser.setAcceptAllFileFilterUsed(false);
         this.imageChooser.setFileFilter(new FileNameExtensionFilter(
@@ -230,6 +249,9 @@ public class View extends JFrame {
             mainTabs
         );
         this.add(horizontalSplit);
+        this.progress.setStringPainted(true);
+        this.progress.setVisible(false);
+        this.add(this.progress, BorderLayout.SOUTH);
         this.setJMenuBar(menuBar);
         this.gamePanel.add(new JLabel("Game Name"));
         this.gamePanel.add(this.gameName);
@@ -439,6 +461,46 @@ public class View extends JFrame {
         this.gamePropertiesButton.addActionListener(listener);
     }
 
+    /**
+     * Adds an action listener to the lazy loading toggle.
+     * @param listener is the listener to add.
+     */
+    public void addLazyListener(ActionListener listener) {
+        this.lazyButton.addActionListener(listener);
+    }
+
+    /**
+     * Tells you whether the lazy loading toggle is on.
+     * @return true if it is on.
+     */
+    public boolean getLazy() {
+        return this.lazyButton.isSelected();
+    }
+
+    /**
+     * Adds an action listener to the split saving toggle.
+     * @param listener is the listener to add.
+     */
+    public void addSplitListener(ActionListener listener) {
+        this.splitSaveButton.addActionListener(listener);
+    }
+
+    /**
+     * Tells you whether the split saving toggle is on.
+     * @return true if it is on.
+     */
+    public boolean getSplit() {
+        return this.splitSaveButton.isSelected();
+    }
+
+    /**
+     * Turns the split saving toggle on or off without telling the listeners.
+     * @param split is whether it should be on.
+     */
+    public void setSplit(boolean split) {
+        this.splitSaveButton.setSelected(split);
+    }
+
     /**
      * Adds an action listener to the load button.
      * @param listener is the listener to add.
@@ -650,13 +712,28 @@ public class View extends JFrame {
 
     /**
      * Opens a dialog that lets you choose a game file, and then returns the
-     * result.
+     * result. If the file doesn't exist yet and has no extension then it gets
+     * the extension of the kind of file that is selected in the dialog, which
+     * is how you pick whether to save as json or binary.
      * @return the file found or null if they cancelled or something.
      */
     public File chooseGameFile() {
         int result = this.gameChooser.showOpenDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
-            return this.gameChooser.getSelectedFile();
+            File file = this.gameChooser.getSelectedFile();
+            FileFilter filter = this.gameChooser.getFileFilter();
+            if (!file.exists() && !file.getName().contains(".") &&
+                filter instanceof FileNameExtensionFilter
+            ) {
+                String extension =
+                    ((FileNameExtensionFilter)filter).getExtensions()[0];
+                file = new File(String.format(
+                    "%s.%s",
+                    file.getPath(),
+                    extension
+                ));
+            }
+            return file;
         }
         return null;
     }
@@ -712,6 +789,42 @@ public class View extends JFrame {
         JOptionPane.showMessageDialog(this, message);
     }
 
+    /**
+     * Shows how far along loading or saving is in the bar at the bottom of
+     * the window.
+     * @param text  is the text to show in the bar.
+     * @param done  is how many things are done.
+     * @param total is how many things there are altogether, or -1 if that
+     *              is not known yet.
+     */
+    public void showProgress(String text, int done, int total) {
+        this.progress.setIndeterminate(total < 0);
+        if (total >= 0) {
+            this.progress.setMaximum(total);
+            this.progress.setValue(done);
+        }
+        this.progress.setString(text);
+        this.progress.setVisible(true);
+    }
+
+    /**
+     * Hides the progress bar again.
+     */
+    public void hideProgress() {
+        this.progress.setVisible(false);
+    }
+
+    /**
+     * Sets whether the program is busy loading or saving a game, which
+     * means the load and save buttons can't be used until it is done.
+     * @param busy is whether it is busy.
+     */
+    public void setBusy(boolean busy) {
+        this.loadButton.setEnabled(!busy);
+        this.saveButton.setEnabled(!busy);
+        this.recentFilesButton.setEnabled(!busy);
+    }
+
     /**
      * Creates a button that has got not but an icon.
      * @param icon is the name of the icon in the resources thing to add.
@@ -2,6 +2,8 @@ package peony;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
 import javax.swing.*;
@@ -10,7 +12,11 @@ import javax.swing.event.TreeModelListener;
 
 /**
  * Displays the visualisation of the current layout and lets you interact
- * with it to move stuff and all that.
+ * with it to move stuff and all that. Everything except the selected leaf
+ * and the stuff below it is drawn into a cached layer image which only gets
+ * redrawn when the camera, the selection, the size of the window or the
+ * structure of the layout changes, so while you are dragging something
+ * around only the thing being dragged has to be drawn again.
  */
 public class Window extends JPanel
     implements MouseListener, MouseWheelListener, MouseMotionListener,
@@ -23,12 +29,27 @@ public class Window extends JPanel
     public static final float MARGIN = 50;
     public static final float MIN_ZOOM = 0.1f;
     public static final float SCALE_POWER = 0.066f;
+    public static final int DEFAULT_FRAME_RATE = 60;
     private final List<WindowListener> listeners = new ArrayList<>();
     private final Point mouse = new Point();
     private final Transformation camera = new Transformation(new Point(), 0, 1);
+    private final Point dragTarget = new Point();
+    private final Timer dragTimer;
     private Layout layout = null;
     private Leaf selected = null;
     private Point selectedPoint = null;
+    private final AffineTransform layerCamera = new AffineTransform();
+    private BufferedImage layer = null;
+    private boolean layerDirty = true;
+    private Leaf layerSelected = null;
+    private double layerScale = 1;
+    private int layerDrawn = 0;
+    private int layerCulled = 0;
+    private int drawnCount = 0;
+    private int culledCount = 0;
+    private int frameRate;
+    private int dragButton = MouseEvent.NOBUTTON;
+    private boolean dragPending = false;
 
     /**
      * Creates it and makes it it's own listener.
@@ -37,6 +58,30 @@ public class Window extends JPanel
         this.addMouseListener(this);
         this.addMouseWheelListener(this);
         this.addMouseMotionListener(this);
+        this.dragTimer = new Timer(0, (ActionEvent e) -> this.flushDrag());
+        this.dragTimer.setRepeats(false);
+        this.setFrameRate(Window.DEFAULT_FRAME_RATE);
+    }
+
+    /**
+     * Gives you the most times per second that dragging the mouse will
+     * change stuff and repaint.
+     * @return the frame rate.
+     */
+    public int getFrameRate() {
+        return this.frameRate;
+    }
+
+    /**
+     * Sets the most times per second that dragging the mouse will change
+     * stuff and repaint. All the mouse movement that happens in between gets
+     * added up and applied in one go.
+     * @param frameRate is the number of times per second. If it is less than
+     *                  one then it is treated as one.
+     */
+    public void setFrameRate(int frameRate) {
+        this.frameRate = Math.max(frameRate, 1);
+        this.dragTimer.setInitialDelay(1000 / this.frameRate);
     }
 
     /**
@@ -50,13 +95,14 @@ public class Window extends JPanel
         if (height > 0) {
             float scale = (float)this.getHeight() /
                 (Window.NORMAL_HEIGHT + Window.MARGIN);
-            this.camera.getTranslation().set(
+            this.camera.setTranslation(
                 (Window.HALF_WIDTH + Window.MARGIN / 2) * scale,
                 (Window.HALF_HEIGHT + Window.MARGIN / 2) * scale
             );
             this.camera.setScale(scale);
         }
         layout.addTreeModelListener(this);
+        this.invalidateLayer();
         this.repaint();
     }
 
@@ -73,7 +119,10 @@ public class Window extends JPanel
      * @param leaf is the leaf to select.
      */
     public void setSelected(Leaf leaf) {
+        if (leaf == this.selected) return;
+        this.repaintLeaf(this.selected);
         this.selected = leaf;
+        this.repaintLeaf(leaf);
     }
 
     /**
@@ -91,6 +140,7 @@ public class Window extends JPanel
      */
     public void setSelectedPoint(Point point) {
         this.selectedPoint = point;
+        this.repaintLeaf(this.selected);
     }
 
     /**
@@ -105,6 +155,112 @@ public class Window extends JPanel
         );
     }
 
+    /**
+     * Gives you a rectangle in screen space that contains a leaf, all of it's
+     * children, and the line that joins it to it's parent.
+     * @param leaf is the leaf to find the bounds of.
+     * @return the screen space bounds.
+     */
+    public Rectangle getScreenBounds(Leaf leaf) {
+        AffineTransform matrix = new AffineTransform(this.camera.getMatrix());
+        Leaf parent = leaf.getParent();
+        if (parent != null) matrix.concatenate(parent.getWorldMatrix());
+        return leaf.getSubtreeBounds().union(new Rectangle()).transform(matrix);
+    }
+
+    /**
+     * Repaints just the part of the window that a leaf is in rather than the
+     * whole thing.
+     * @param leaf is the leaf to repaint. If it is null then nothing happens.
+     */
+    public void repaintLeaf(Leaf leaf) {
+        if (leaf == null) return;
+        this.repaintArea(this.getScreenBounds(leaf), leaf.getSubtreeLabel());
+    }
+
+    /**
+     * Makes a change to a leaf and then repaints the area that the leaf was
+     * in before the change along with the area it is in after the change.
+     * @param leaf   is the leaf that is going to change. If it is null the
+     *               change still happens and the whole window is repainted.
+     * @param change is the thing that changes the leaf.
+     */
+    public void repaintLeaf(Leaf leaf, Runnable change) {
+        if (leaf == null) {
+            change.run();
+            this.repaint();
+            return;
+        }
+        Rectangle before = this.getScreenBounds(leaf);
+        int label = leaf.getSubtreeLabel();
+        change.run();
+        this.repaintArea(
+            before.union(this.getScreenBounds(leaf)),
+            Math.max(label, leaf.getSubtreeLabel())
+        );
+    }
+
+    /**
+     * Repaints an area of the window given in screen space, with some extra
+     * room around it for the names and the selection markers that stick out
+     * of the leaves' bounds.
+     * @param area  is the area to repaint.
+     * @param label is the number of characters in the longest name of the
+     *              leaves in the area.
+     */
+    private void repaintArea(Rectangle area, int label) {
+        area = Renderer.pad(
+            area,
+            label,
+            this.getFontMetrics(this.getFont())
+        );
+        float left = area.getPos().getX();
+        float top = area.getPos().getY();
+        float right = left + area.getSize().getX();
+        float bottom = top + area.getSize().getY();
+        if (!Float.isFinite(left) || !Float.isFinite(top) ||
+            !Float.isFinite(right) || !Float.isFinite(bottom)
+        ) {
+            this.repaint();
+            return;
+        }
+        int x = (int)Math.floor(left);
+        int y = (int)Math.floor(top);
+        this.repaint(
+            x,
+            y,
+            (int)Math.ceil(right) - x,
+            (int)Math.ceil(bottom) - y
+        );
+    }
+
+    /**
+     * Gives you the number of leaves that were drawn the last time the
+     * window was painted.
+     * @return the number of leaves drawn.
+     */
+    public int getDrawnCount() {
+        return this.drawnCount;
+    }
+
+    /**
+     * Gives you the number of leaves that were skipped for being off screen
+     * the last time the window was painted.
+     * @return the number of leaves skipped.
+     */
+    public int getCulledCount() {
+        return this.culledCount;
+    }
+
+    /**
+     * Makes the cached layer get drawn again next time the window is painted.
+     * You need to call this if you change a leaf other than the selected one
+     * without the layout telling the window about it.
+     */
+    public void invalidateLayer() {
+        this.layerDirty = true;
+    }
+
     /**
      * Adds a listener to the list of window listeners.
      * @param listener is the thing that listens.
@@ -127,16 +283,36 @@ public class Window extends JPanel
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
         if (!(g instanceof Graphics2D)) return;
-        Renderer r = new Renderer(
-            (Graphics2D) g,
-            this.selected,
-            this.selectedPoint
-        );
+        Graphics2D g2 = (Graphics2D)g;
+        Renderer r = new Renderer(g2, this.selected, this.selectedPoint);
         r.push(this.camera);
-        if (this.layout != null) {
-            Leaf root = (Leaf)this.layout.getRoot();
-            if (root != null) root.render(r);
+        Leaf root = this.layout == null ? null : (Leaf)this.layout.getRoot();
+        if (root != null && this.refreshLayer(g2, root)) {
+            g.drawImage(
+                this.layer,
+                0,
+                0,
+                this.getWidth(),
+                this.getHeight(),
+                null
+            );
+            Leaf front = this.selected;
+            if (front != null && front.getLayout() == this.layout) {
+                Leaf parent = front.getParent();
+                if (parent != null) {
+                    r.pushMatrix(parent.getWorldMatrix());
+                    parent.normalColour(r);
+                    r.drawDottedLine(
+                        Point.ORIGIN,
+                        front.getTransformation().getTranslation()
+                    );
+                }
+                front.render(r);
+                if (parent != null) r.pop();
+            }
         }
+        this.drawnCount = this.layerDrawn + r.getDrawnCount();
+        this.culledCount = this.layerCulled + r.getCulledCount();
         g.setColor(Color.BLACK);
         Point corner = new Point(
             (float)Window.NORMAL_WIDTH / -2,
@@ -151,6 +327,62 @@ public class Window extends JPanel
         ));
     }
 
+    /**
+     * Makes sure that the cached layer has got everything but the selected
+     * leaf drawn on it as things are right now, and draws it again if not.
+     * @param g    is the graphics that the window is being painted with,
+     *             which tells us how big the pixels really are.
+     * @param root is the root leaf of the current layout.
+     * @return true if the layer is ready and false if the window has no size
+     *         so there is nothing to draw.
+     */
+    private boolean refreshLayer(Graphics2D g, Leaf root) {
+        int width = this.getWidth();
+        int height = this.getHeight();
+        if (width <= 0 || height <= 0) return false;
+        double scale = g.getTransform().getScaleX();
+        if (scale <= 0) scale = 1;
+        int pixelWidth = (int)Math.ceil(width * scale);
+        int pixelHeight = (int)Math.ceil(height * scale);
+        if (this.layer == null || this.layer.getWidth() != pixelWidth ||
+            this.layer.getHeight() != pixelHeight
+        ) {
+            GraphicsConfiguration config = this.getGraphicsConfiguration();
+            this.layer = config == null ?
+                new BufferedImage(
+                    pixelWidth,
+                    pixelHeight,
+                    BufferedImage.TYPE_INT_RGB
+                ) :
+                config.createCompatibleImage(pixelWidth, pixelHeight);
+            this.layerDirty = true;
+        }
+        if (!this.layerDirty && this.layerSelected == this.selected &&
+            this.layerScale == scale &&
+            this.layerCamera.equals(this.camera.getMatrix())
+        ) {
+            return true;
+        }
+        Graphics2D lg = this.layer.createGraphics();
+        lg.setColor(this.getBackground());
+        lg.fillRect(0, 0, pixelWidth, pixelHeight);
+        lg.scale(scale, scale);
+        lg.setClip(0, 0, width, height);
+        lg.setFont(this.getFont());
+        Renderer r = new Renderer(lg, this.selected, this.selectedPoint);
+        r.setExcluded(this.selected);
+        r.push(this.camera);
+        root.render(r);
+        lg.dispose();
+        this.layerDrawn = r.getDrawnCount();
+        this.layerCulled = r.getCulledCount();
+        this.layerCamera.setTransform(this.camera.getMatrix());
+        this.layerSelected = this.selected;
+        this.layerScale = scale;
+        this.layerDirty = false;
+        return true;
+    }
+
     @Override
     public Dimension getPreferredSize() {
         return new Dimension(Window.NORMAL_WIDTH * 2, Window.NORMAL_HEIGHT * 2);
@@ -158,42 +390,67 @@ public class Window extends JPanel
 
     @Override
     public void mouseClicked(MouseEvent e) {
+        this.flushDrag();
         this.mouse.set(e.getX(), e.getY());
     }
 
     @Override
     public void mousePressed(MouseEvent e) {
+        this.flushDrag();
         this.mouse.set(e.getX(), e.getY());
         if (e.getButton() == MouseEvent.BUTTON1) {
             if (this.layout == null) return;
             Point pos = this.camera.in(this.mouse);
-            Pair<Leaf, Point> hit = ((Leaf)this.layout.getRoot()).hit(pos);
+            Pair<Leaf, Point> hit = this.layout.hit(pos);
+            Leaf old = this.selected;
             this.selected = hit.getA();
             this.selectedPoint = hit.getB();
-            this.repaint();
+            this.repaintLeaf(old);
+            this.repaintLeaf(this.selected);
             this.fireEvent(this.selected);
         }
     }
 
     @Override
     public void mouseReleased(MouseEvent e) {
+        this.flushDrag();
         this.mouse.set(e.getX(), e.getY());
     }
 
     @Override
     public void mouseEntered(MouseEvent e) {
+        this.flushDrag();
         this.mouse.set(e.getX(), e.getY());
     }
 
     @Override
     public void mouseExited(MouseEvent e) {
+        this.flushDrag();
         this.mouse.set(e.getX(), e.getY());
     }
 
     @Override
     public void mouseDragged(MouseEvent e) {
-        Point newMouse = new Point(e.getX(), e.getY());
-        if (e.getButton() == MouseEvent.BUTTON1 && this.selected != null) {
+        if (this.dragPending && e.getButton() != this.dragButton) {
+            this.flushDrag();
+        }
+        this.dragTarget.set(e.getX(), e.getY());
+        this.dragButton = e.getButton();
+        this.dragPending = true;
+        if (!this.dragTimer.isRunning()) this.dragTimer.start();
+    }
+
+    /**
+     * Applies all of the mouse dragging that has happened since the last
+     * time this was called in one go. Since the movement just gets added up
+     * it ends up in exactly the same place as applying each bit separately.
+     */
+    private void flushDrag() {
+        if (!this.dragPending) return;
+        this.dragPending = false;
+        this.dragTimer.stop();
+        Point newMouse = new Point(this.dragTarget);
+        if (this.dragButton == MouseEvent.BUTTON1 && this.selected != null) {
             Transformation t = new Transformation(this.camera);
             Leaf transformer = this.selectedPoint != null ?
                 this.selected : this.selected.getParent();
@@ -204,15 +461,16 @@ public class Window extends JPanel
                 tNewMouse = transformer.globalToLocal(tNewMouse);
             }
             Point delta = tNewMouse.minus(tMouse);
-            if (this.selectedPoint != null) {
-                selectedPoint.add(delta);
-            } else {
-                selected.getTransformation().getTranslation().add(delta);
-            }
-            this.repaint();
-        } else if (e.getButton() == MouseEvent.BUTTON3) {
-            this.camera.getTranslation().add(newMouse);
-            this.camera.getTranslation().subtract(mouse);
+            this.repaintLeaf(this.selected, () -> {
+                if (this.selectedPoint != null) {
+                    this.selectedPoint.add(delta);
+                    this.selected.invalidateBounds();
+                } else {
+                    this.selected.getTransformation().translate(delta);
+                }
+            });
+        } else if (this.dragButton == MouseEvent.BUTTON3) {
+            this.camera.translate(newMouse.minus(this.mouse));
             this.repaint();
         }
         this.mouse.set(newMouse);
@@ -220,11 +478,13 @@ public class Window extends JPanel
 
     @Override
     public void mouseMoved(MouseEvent e) {
+        this.flushDrag();
         this.mouse.set(e.getX(), e.getY());
     }
 
     @Override
     public void mouseWheelMoved(MouseWheelEvent e) {
+        this.flushDrag();
         this.mouse.set(e.getX(), e.getY());
         this.camera.setScale(
             this.camera.getScale() - (float)e.getPreciseWheelRotation() *
@@ -238,21 +498,33 @@ public class Window extends JPanel
 
     @Override
     public void treeNodesChanged(TreeModelEvent e) {
-        this.repaint();
+        this.invalidateLayer();
+        Object[] children = e.getChildren();
+        Object changed = children != null && children.length == 1 ?
+            children[0] :
+            e.getTreePath().getLastPathComponent();
+        if (changed instanceof Leaf) {
+            this.repaintLeaf((Leaf)changed);
+        } else {
+            this.repaint();
+        }
     }
 
     @Override
     public void treeNodesInserted(TreeModelEvent e) {
+        this.invalidateLayer();
         this.repaint();
     }
 
     @Override
     public void treeNodesRemoved(TreeModelEvent e) {
+        this.invalidateLayer();
         this.repaint();
     }
 
     @Override
     public void treeStructureChanged(TreeModelEvent e) {
+        this.invalidateLayer();
         this.repaint();
     }
 }
@@ -0,0 +1,237 @@
+package peony;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Makes sure that games survive being written in the binary format and read
+ * back again, and that they come out the same as the json form.
+ */
+public class BinaryWriterTest {
+    /**
+     * Makes the test game and gives one of it's shapes some extra points so
+     * that they are not just the default ones.
+     * @return the game.
+     */
+    private static Game makeGame() {
+        Game game = JsonReaderTest.makeGame();
+        ShapeLeaf shape = new ShapeLeaf();
+        Point point = shape.getPointByPosition(
+            Point.fromAngle(0, ShapeLeaf.DEFAULT_RADIUS)
+        );
+        for (int i = 0; i < 5; i++) {
+            point = shape.splitEdge(point);
+            point.add(new Point(i * 3, -i));
+        }
+        ((Leaf)game.getFirstLayout().getRoot()).addChild(shape);
+        return game;
+    }
+
+    /**
+     * Writes a game in the binary format and reads it back.
+     * @param game is the game.
+     * @return the game that was read back.
+     * @throws IOException if it fails.
+     */
+    private static Game roundTrip(Game game) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryWriter out = new BinaryWriter(bytes);
+        game.write(out, JsonReaderTest.ROOT);
+        out.flush();
+        Result<Game> read = Game.read(
+            new BinaryReader(new ByteArrayInputStream(bytes.toByteArray())),
+            JsonReaderTest.ROOT
+        );
+        assertTrue("read it", read.success());
+        return read.value();
+    }
+
+    /**
+     * Lists the files in a folder.
+     * @param folder is the folder.
+     * @return the files in it.
+     * @throws IOException if it can't be listed.
+     */
+    private static List<Path> list(Path folder) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+            for (Path entry: entries) files.add(entry);
+        }
+        return files;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Game game = BinaryWriterTest.makeGame();
+        Game read = BinaryWriterTest.roundTrip(game);
+        assertTrue(
+            "same game",
+            game.toJson(JsonReaderTest.ROOT).similar(
+                read.toJson(JsonReaderTest.ROOT)
+            )
+        );
+    }
+
+    @Test
+    public void testSameAsJson() throws IOException {
+        JSONObject json = BinaryWriterTest.makeGame().toJson(
+            JsonReaderTest.ROOT
+        );
+        Result<Game> fromJson = Game.fromJson(json, JsonReaderTest.ROOT);
+        assertTrue("loaded json", fromJson.success());
+        Game read = BinaryWriterTest.roundTrip(fromJson.value());
+        assertTrue("same json", json.similar(read.toJson(JsonReaderTest.ROOT)));
+    }
+
+    @Test
+    public void testDetectsFormat() throws IOException {
+        Game game = BinaryWriterTest.makeGame();
+        Path dir = Files.createTempDirectory("peony");
+        File binary = dir.resolve("game." + BinaryWriter.EXTENSION).toFile();
+        File json = dir.resolve("game.json").toFile();
+        assertTrue(Model.writeGame(game, binary).success());
+        assertTrue(Model.writeGame(game, json).success());
+        try (BufferedInputStream in = new BufferedInputStream(
+            Files.newInputStream(binary.toPath())
+        )) {
+            assertTrue("binary is binary", BinaryReader.isBinary(in));
+        }
+        try (BufferedInputStream in = new BufferedInputStream(
+            Files.newInputStream(json.toPath())
+        )) {
+            assertFalse("json is not binary", BinaryReader.isBinary(in));
+        }
+        assertTrue(
+            "binary is smaller",
+            binary.length() < json.length()
+        );
+        JSONObject expected = game.toJson(JsonReaderTest.ROOT);
+        for (File file: new File[]{binary, json}) {
+            Result<Game> read = Model.readGame(file);
+            assertTrue("read it", read.success());
+            assertTrue(
+                "same game",
+                expected.similar(read.value().toJson(JsonReaderTest.ROOT))
+            );
+            file.delete();
+        }
+        dir.toFile().delete();
+    }
+
+    @Test
+    public void testVarints() throws IOException {
+        int[] values = {0, 1, 127, 128, 300, 16384, Integer.MAX_VALUE, -1};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryWriter out = new BinaryWriter(bytes);
+        for (int value: values) out.writeVarint(value);
+        out.flush();
+        BinaryReader in = new BinaryReader(
+            new ByteArrayInputStream(bytes.toByteArray())
+        );
+        for (int value: values) assertEquals(value, in.readVarint());
+    }
+
+    @Test
+    public void testSplitOnlyWritesDirty() throws IOException {
+        Game game = BinaryWriterTest.makeGame();
+        Path dir = Files.createTempDirectory("peony");
+        File file = dir.resolve("game." + BinaryWriter.EXTENSION).toFile();
+        assertTrue(Model.writeGame(game, file, null, true).success());
+        game.markSaved();
+        assertFalse("clean", game.isDirty());
+        Path folder = BinaryWriter.getSegmentFolder(file.toPath());
+        List<Path> segments = BinaryWriterTest.list(folder);
+        assertEquals("one per layout", 3, segments.size());
+        FileTime old = FileTime.fromMillis(0);
+        for (Path segment: segments) Files.setLastModifiedTime(segment, old);
+        Layout third = game.getFirstLayout().getChildren().get(1);
+        ((Leaf)third.getRoot()).getChildren().get(0).setLocked(true);
+        assertTrue("dirty", game.isDirty());
+        Game snapshot = game.copy();
+        assertTrue(Model.writeGame(snapshot, file, null, true).success());
+        snapshot.markSaved();
+        assertFalse("clean again", game.isDirty());
+        segments = BinaryWriterTest.list(folder);
+        assertEquals("old one kept for the backup", 4, segments.size());
+        int written = 0;
+        for (Path segment: segments) {
+            if (!Files.getLastModifiedTime(segment).equals(old)) written++;
+        }
+        assertEquals("only the dirty one", 1, written);
+        Path backup = dir.resolve(file.getName() + Model.BACKUP_SUFFIX);
+        assertTrue("backup works", Model.readGame(backup.toFile()).success());
+        snapshot = game.copy();
+        assertTrue(Model.writeGame(snapshot, file, null, true).success());
+        segments = BinaryWriterTest.list(folder);
+        assertEquals("old one is gone", 3, segments.size());
+        Result<Game> read = Model.readGame(file);
+        assertTrue("read it", read.success());
+        assertTrue(
+            "same game",
+            game.toJson(JsonReaderTest.ROOT).similar(
+                read.value().toJson(JsonReaderTest.ROOT)
+            )
+        );
+        for (Path segment: segments) Files.delete(segment);
+        Files.delete(folder);
+        for (Path left: BinaryWriterTest.list(dir)) Files.delete(left);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testUnsplitCleansUp() throws IOException {
+        Game game = BinaryWriterTest.makeGame();
+        Path dir = Files.createTempDirectory("peony");
+        File file = dir.resolve("game." + BinaryWriter.EXTENSION).toFile();
+        assertTrue(Model.writeGame(game, file, null, true).success());
+        Path folder = BinaryWriter.getSegmentFolder(file.toPath());
+        Result<Game> read = Model.readGame(file);
+        assertTrue("read it", read.success());
+        assertTrue("was split", read.value().isSplit());
+        assertTrue(Model.writeGame(game, file, null, false).success());
+        List<Path> segments = BinaryWriterTest.list(folder);
+        assertEquals("kept for backup", 3, segments.size());
+        assertTrue(Model.writeGame(game, file, null, false).success());
+        assertFalse("folder gone", Files.exists(folder));
+        read = Model.readGame(file);
+        assertTrue("read it again", read.success());
+        assertFalse("not split", read.value().isSplit());
+        for (Path left: BinaryWriterTest.list(dir)) Files.delete(left);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testKeepsBackup() throws IOException {
+        Game game = BinaryWriterTest.makeGame();
+        Path dir = Files.createTempDirectory("peony");
+        File file = dir.resolve("game.json").toFile();
+        assertTrue(Model.writeGame(game, file).success());
+        game.setName("changed");
+        assertTrue(Model.writeGame(game, file).success());
+        Path backup = dir.resolve("game.json" + Model.BACKUP_SUFFIX);
+        assertEquals("no temp left", 2, BinaryWriterTest.list(dir).size());
+        Result<Game> old = Model.readGame(backup.toFile());
+        assertTrue("read backup", old.success());
+        assertEquals("test", old.value().getName());
+        Result<Game> current = Model.readGame(file);
+        assertTrue("read current", current.success());
+        assertEquals("changed", current.value().getName());
+        Files.delete(backup);
+        Files.delete(file.toPath());
+        Files.delete(dir);
+    }
+}
@@ -0,0 +1,192 @@
+package peony;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Makes sure the image cache shares images, stays within it's budget and
+ * decodes in the background.
+ */
+public class ImageCacheTest {
+    public static final long SIZE = 8 * 8 * 4 * 4 / 3;
+
+    /**
+     * Writes a little png file.
+     * @param file is where to write it.
+     * @param size is how wide and high it is.
+     * @throws IOException if it can't be written.
+     */
+    private static void writeImage(Path file, int size) throws IOException {
+        BufferedImage image = new BufferedImage(
+            size,
+            size,
+            BufferedImage.TYPE_INT_ARGB
+        );
+        ImageIO.write(image, "png", file.toFile());
+    }
+
+    @Test
+    public void testShared() throws IOException {
+        Path dir = Files.createTempDirectory("peony");
+        Path file = dir.resolve("a.png");
+        ImageCacheTest.writeImage(file, 8);
+        ImageCache cache = new ImageCache(ImageCache.DEFAULT_BUDGET);
+        ImageCache.Handle first = cache.acquire(file).value();
+        ImageCache.Handle second = cache.acquire(
+            dir.resolve("../" + dir.getFileName() + "/a.png")
+        ).value();
+        assertSame("same image", first.get(), second.get());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(ImageCacheTest.SIZE, cache.getBytes());
+        assertEquals(8, second.getWidth());
+        first.release();
+        second.release();
+        assertFalse(cache.acquire(dir.resolve("nope.png")).success());
+        Files.delete(file);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        Path dir = Files.createTempDirectory("peony");
+        Path a = dir.resolve("a.png");
+        Path b = dir.resolve("b.png");
+        Path c = dir.resolve("c.png");
+        for (Path file: new Path[]{a, b, c}) {
+            ImageCacheTest.writeImage(file, 8);
+        }
+        ImageCache cache = new ImageCache(ImageCacheTest.SIZE * 2);
+        ImageCache.Handle first = cache.acquire(a).value();
+        ImageCache.Handle second = cache.acquire(b).value();
+        second.release();
+        ImageCache.Handle third = cache.acquire(c).value();
+        assertEquals(
+            "within budget",
+            ImageCacheTest.SIZE * 2,
+            cache.getBytes()
+        );
+        assertEquals(3, cache.getMisses());
+        cache.acquire(a).value().release();
+        assertEquals("unheld one went first", 1, cache.getHits());
+        cache.setBudget(ImageCacheTest.SIZE);
+        assertEquals(
+            "held ones stay",
+            ImageCacheTest.SIZE * 2,
+            cache.getBytes()
+        );
+        third.release();
+        assertEquals(ImageCacheTest.SIZE, cache.getBytes());
+        assertNotNull("still there", first.get());
+        assertEquals(3, cache.getMisses());
+        first.release();
+        for (Path file: new Path[]{a, b, c}) Files.delete(file);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testHeldNotEvicted() throws IOException {
+        Path dir = Files.createTempDirectory("peony");
+        Path a = dir.resolve("a.png");
+        Path b = dir.resolve("b.png");
+        ImageCacheTest.writeImage(a, 8);
+        ImageCacheTest.writeImage(b, 8);
+        ImageCache cache = new ImageCache(ImageCacheTest.SIZE);
+        ImageCache.Handle first = cache.acquire(a).value();
+        ImageCache.Handle second = cache.acquire(b).value();
+        for (int i = 0; i < 5; i++) {
+            assertNotNull("first kept", first.getNow(() -> {}));
+            assertNotNull("second kept", second.getNow(() -> {}));
+        }
+        assertEquals("decoded once each", 2, cache.getMisses());
+        assertEquals(
+            "over budget",
+            ImageCacheTest.SIZE * 2,
+            cache.getBytes()
+        );
+        first.release();
+        assertEquals("back in budget", ImageCacheTest.SIZE, cache.getBytes());
+        assertNotNull(second.get());
+        second.release();
+        Files.delete(a);
+        Files.delete(b);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testLater() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("peony");
+        Path file = dir.resolve("a.png");
+        BufferedImage written = new BufferedImage(
+            30,
+            20,
+            BufferedImage.TYPE_INT_ARGB
+        );
+        ImageIO.write(written, "png", file.toFile());
+        ImageCache cache = new ImageCache(ImageCache.DEFAULT_BUDGET);
+        ImageCache.Handle handle = cache.acquireLater(file).value();
+        assertEquals("size from header", 30, handle.getWidth());
+        assertEquals("size from header", 20, handle.getHeight());
+        CountDownLatch ready = new CountDownLatch(1);
+        if (handle.getNow(ready::countDown) == null) {
+            assertTrue("got ready", ready.await(10, TimeUnit.SECONDS));
+        }
+        assertNotNull("decoded", handle.getNow(ready::countDown));
+        assertEquals(1, cache.getMisses());
+        Path junk = dir.resolve("b.png");
+        Files.writeString(junk, "not a png");
+        assertFalse("no header", cache.acquireLater(junk).success());
+        handle.release();
+        Files.delete(junk);
+        Files.delete(file);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testFailedDecodeNotRetried()
+        throws IOException, InterruptedException
+    {
+        Path dir = Files.createTempDirectory("peony");
+        Path file = dir.resolve("broken.png");
+        BufferedImage noise = new BufferedImage(
+            64,
+            64,
+            BufferedImage.TYPE_INT_ARGB
+        );
+        Random random = new Random(3);
+        for (int x = 0; x < 64; x++) {
+            for (int y = 0; y < 64; y++) noise.setRGB(x, y, random.nextInt());
+        }
+        ImageIO.write(noise, "png", file.toFile());
+        byte[] whole = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(whole, whole.length / 2));
+        ImageCache cache = new ImageCache(ImageCache.DEFAULT_BUDGET);
+        ImageCache.Handle handle = cache.acquireLater(file).value();
+        assertEquals("size from header", 64, handle.getWidth());
+        AtomicInteger ready = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            assertNull(handle.getNow(ready::incrementAndGet));
+            Thread.sleep(50);
+        }
+        assertNull("still broken", handle.get());
+        assertEquals("decoded once", 1, cache.getMisses());
+        assertEquals("never ready", 0, ready.get());
+        handle.release();
+        assertFalse("not again", cache.acquire(file).success());
+        assertEquals("still once", 1, cache.getMisses());
+        Files.delete(file);
+        Files.delete(dir);
+    }
+}
@@ -0,0 +1,141 @@
+package peony;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Makes sure the streaming json reader builds the same games as the normal
+ * json loading does.
+ */
+public class JsonReaderTest {
+    public static final Path ROOT = Path.of("test.json").toAbsolutePath();
+
+    /**
+     * Makes a little game with some layouts and leaves in it.
+     * @return the game.
+     */
+    public static Game makeGame() {
+        Random random = new Random(3);
+        Layout first = new Layout("first");
+        first.setScript("print('hello')");
+        first.addChild(new Layout("second"));
+        first.addChild(new Layout("third"));
+        for (Layout layout: new Layout[]{first, first.getChildren().get(1)}) {
+            List<Leaf> leaves = new ArrayList<>();
+            leaves.add((Leaf)layout.getRoot());
+            for (int i = 0; i < 20; i++) {
+                Leaf leaf = random.nextBoolean() ?
+                    new ShapeLeaf() :
+                    new PointLeaf();
+                leaf.getTransformation().setTranslation(
+                    random.nextFloat() * 100,
+                    random.nextFloat() * -100
+                );
+                leaf.getTransformation().setRotation(random.nextFloat());
+                leaf.getTransformation().setScale(random.nextFloat() + 1);
+                leaf.setLocked(random.nextBoolean());
+                leaves.get(random.nextInt(leaves.size())).addChild(leaf);
+                leaves.add(leaf);
+            }
+        }
+        return new Game("test", "1.2.3", first, null);
+    }
+
+    /**
+     * Reads a game with the json reader.
+     * @param json is the json text.
+     * @return the result of reading it.
+     */
+    private static Result<Game> read(String json) {
+        JsonReader in = new JsonReader(new StringReader(json));
+        return Game.read(in, JsonReaderTest.ROOT);
+    }
+
+    /**
+     * Writes out a json value with the keys of all the objects in it in
+     * reverse order.
+     * @param value is the thing to write.
+     * @param out   is where to write it.
+     */
+    private static void reversed(Object value, StringBuilder out) {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject)value;
+            List<String> keys = new ArrayList<>(object.keySet());
+            Collections.sort(keys, Collections.reverseOrder());
+            out.append('{');
+            for (int i = 0; i < keys.size(); i++) {
+                if (i > 0) out.append(',');
+                out.append(JSONObject.quote(keys.get(i))).append(':');
+                JsonReaderTest.reversed(object.get(keys.get(i)), out);
+            }
+            out.append('}');
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray)value;
+            out.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                if (i > 0) out.append(',');
+                JsonReaderTest.reversed(array.get(i), out);
+            }
+            out.append(']');
+        } else {
+            out.append(JSONObject.valueToString(value));
+        }
+    }
+
+    @Test
+    public void testSameAsFromJson() {
+        JSONObject json = JsonReaderTest.makeGame().toJson(JsonReaderTest.ROOT);
+        Result<Game> streamed = JsonReaderTest.read(json.toString(2));
+        assertTrue("streamed loaded", streamed.success());
+        Result<Game> dom = Game.fromJson(json, JsonReaderTest.ROOT);
+        assertTrue("dom loaded", dom.success());
+        assertTrue(
+            "same game",
+            dom.value().toJson(JsonReaderTest.ROOT).similar(
+                streamed.value().toJson(JsonReaderTest.ROOT)
+            )
+        );
+    }
+
+    @Test
+    public void testAnyOrder() {
+        JSONObject json = JsonReaderTest.makeGame().toJson(JsonReaderTest.ROOT);
+        StringBuilder text = new StringBuilder();
+        JsonReaderTest.reversed(json, text);
+        Result<Game> streamed = JsonReaderTest.read(text.toString());
+        assertTrue("streamed loaded", streamed.success());
+        assertTrue(
+            "same game",
+            json.similar(streamed.value().toJson(JsonReaderTest.ROOT))
+        );
+    }
+
+    @Test
+    public void testMalformed() {
+        String json = JsonReaderTest.makeGame()
+            .toJson(JsonReaderTest.ROOT)
+            .toString();
+        String broken = json.substring(0, json.length() / 2);
+        try {
+            JsonReaderTest.read(broken);
+            fail("should have thrown");
+        } catch (JSONException e) {
+            assertNotNull(e.getMessage());
+        }
+        Result<Game> missing = JsonReaderTest.read(
+            "{\"name\": \"test\", \"version\": \"1\"}"
+        );
+        assertFalse("no layout", missing.success());
+    }
+}
@@ -0,0 +1,88 @@
+package peony;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Makes sure that writing games out with the json writer gives the same
+ * json as toJson does.
+ */
+public class JsonWriterTest {
+    @Test
+    public void testSameAsToJson() throws IOException {
+        Game game = JsonReaderTest.makeGame();
+        StringWriter text = new StringWriter();
+        game.write(new JsonWriter(text), JsonReaderTest.ROOT);
+        JSONObject written = new JSONObject(text.toString());
+        JSONObject expected = new JSONObject(
+            game.toJson(JsonReaderTest.ROOT).toString()
+        );
+        assertTrue("same json", written.similar(expected));
+    }
+
+    @Test
+    public void testReadBack() throws IOException {
+        Game game = JsonReaderTest.makeGame();
+        StringWriter text = new StringWriter();
+        game.write(new JsonWriter(text), JsonReaderTest.ROOT);
+        Result<Game> read = Game.read(
+            new JsonReader(new StringReader(text.toString())),
+            JsonReaderTest.ROOT
+        );
+        assertTrue("read it", read.success());
+        assertTrue(
+            "same game",
+            game.toJson(JsonReaderTest.ROOT).similar(
+                read.value().toJson(JsonReaderTest.ROOT)
+            )
+        );
+    }
+
+    @Test
+    public void testCommas() throws IOException {
+        StringWriter text = new StringWriter();
+        JsonWriter out = new JsonWriter(text);
+        out.beginObject();
+        out.name("a").beginArray().value(1.5f).value("b").endArray();
+        out.name("c").beginObject().endObject();
+        out.name("d").value(true);
+        out.endObject();
+        assertEquals(
+            "{\"a\":[1.5,\"b\"],\"c\":{},\"d\":true}",
+            text.toString()
+        );
+    }
+
+    @Test
+    public void testSnapshotAndProgress() throws IOException {
+        Game game = JsonReaderTest.makeGame();
+        Game snapshot = game.copy();
+        JSONObject before = game.toJson(JsonReaderTest.ROOT);
+        assertTrue(
+            "same as copy",
+            before.similar(snapshot.toJson(JsonReaderTest.ROOT))
+        );
+        Leaf root = (Leaf)game.getFirstLayout().getRoot();
+        root.getChildren().get(0).getTransformation().setScale(9);
+        root.addChild(new PointLeaf());
+        assertTrue(
+            "copy not changed",
+            before.similar(snapshot.toJson(JsonReaderTest.ROOT))
+        );
+        List<String> done = new ArrayList<>();
+        StringWriter text = new StringWriter();
+        JsonWriter out = new JsonWriter(text);
+        out.setListener((Layout layout) -> done.add(layout.getName()));
+        snapshot.write(out, JsonReaderTest.ROOT);
+        assertEquals(Arrays.asList("second", "third", "first"), done);
+    }
+}
@@ -0,0 +1,251 @@
+package peony;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests loading layouts from json, which happens on a bunch of threads, and
+ * loading them lazily.
+ */
+public class LayoutTest {
+    /**
+     * Makes a layout with a lot of child layouts that each have a few
+     * children of their own.
+     * @return the top layout.
+     */
+    private static Layout makeLayout() {
+        Layout top = new Layout("top");
+        for (int i = 0; i < 50; i++) {
+            Layout child = new Layout(String.format("child%d", i));
+            for (int j = 0; j < 3; j++) {
+                Layout grandchild = new Layout(String.format("small%d", j));
+                ((Leaf)grandchild.getRoot()).addChild(new ShapeLeaf());
+                child.addChild(grandchild);
+            }
+            top.addChild(child);
+        }
+        return top;
+    }
+
+    @Test
+    public void testOrderKept() {
+        JSONObject json = LayoutTest.makeLayout().toJson(JsonReaderTest.ROOT);
+        Result<Layout> layout = Layout.fromJson(json, JsonReaderTest.ROOT);
+        assertTrue("loaded", layout.success());
+        assertTrue(
+            "same layout",
+            json.similar(layout.value().toJson(JsonReaderTest.ROOT))
+        );
+        for (Layout child: layout.value().getChildren()) {
+            assertSame(layout.value(), child.getParent());
+            for (Layout grandchild: child.getChildren()) {
+                assertSame(child, grandchild.getParent());
+            }
+        }
+    }
+
+    @Test
+    public void testFirstError() {
+        JSONObject json = LayoutTest.makeLayout().toJson(JsonReaderTest.ROOT);
+        JSONArray children = json.getJSONArray("children");
+        children.getJSONObject(40)
+            .getJSONArray("children")
+            .getJSONObject(0)
+            .getJSONObject("root")
+            .put("type", "second");
+        children.getJSONObject(7).getJSONObject("root").put("type", "first");
+        Result<Layout> layout = Layout.fromJson(json, JsonReaderTest.ROOT);
+        assertFalse("failed", layout.success());
+        assertEquals("Invalid leaf type: first", layout.message());
+    }
+
+    @Test
+    public void testBuiltWhileReading() {
+        JSONObject json = LayoutTest.makeLayout().toJson(JsonReaderTest.ROOT);
+        Result<Layout> layout = Layout.read(
+            new JsonReader(new StringReader(json.toString())),
+            JsonReaderTest.ROOT.getParent()
+        );
+        assertTrue("read", layout.success());
+        assertTrue("built", layout.value().finishBuilding().success());
+        Layout child = layout.value().getChildren().get(3);
+        assertTrue("loaded", child.getChildren().get(2).isLoaded());
+        assertTrue(
+            "same layout",
+            json.similar(layout.value().toJson(JsonReaderTest.ROOT))
+        );
+        JSONArray children = json.getJSONArray("children");
+        children.getJSONObject(40).getJSONObject("root").put("type", "second");
+        children.getJSONObject(7).getJSONObject("root").put("type", "first");
+        layout = Layout.read(
+            new JsonReader(new StringReader(json.toString())),
+            JsonReaderTest.ROOT.getParent()
+        );
+        assertTrue("read", layout.success());
+        Result<Void> built = layout.value().finishBuilding();
+        assertFalse("failed", built.success());
+        assertEquals("Invalid leaf type: first", built.message());
+    }
+
+    @Test
+    public void testLazy() throws IOException {
+        Game game = JsonReaderTest.makeGame();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryWriter out = new BinaryWriter(bytes);
+        game.write(out, JsonReaderTest.ROOT);
+        out.flush();
+        BinaryReader in = new BinaryReader(
+            new ByteArrayInputStream(bytes.toByteArray())
+        );
+        in.setLazy(true);
+        Result<Game> read = Game.read(in, JsonReaderTest.ROOT);
+        assertTrue("read it", read.success());
+        Layout first = read.value().getFirstLayout();
+        Layout third = first.getChildren().get(1);
+        assertFalse("not loaded", third.isLoaded());
+        assertTrue(
+            "same game",
+            game.toJson(JsonReaderTest.ROOT).similar(
+                read.value().toJson(JsonReaderTest.ROOT)
+            )
+        );
+        assertFalse("still not loaded", third.isLoaded());
+        read.value().setMaxLoaded(1);
+        read.value().use(third);
+        assertTrue("loaded", third.isLoaded());
+        read.value().use(first);
+        assertTrue("first loaded", first.isLoaded());
+        assertFalse("third unloaded", third.isLoaded());
+        Leaf root = (Leaf)third.getRoot();
+        root.getChildren().get(0).getTransformation().setScale(7);
+        read.value().use(first);
+        assertTrue("changed ones stay", third.isLoaded());
+        assertFalse("can't unload", third.unload());
+    }
+
+    @Test
+    public void testBrokenNotWritten() {
+        JSONObject broken = new JSONObject().put("type", "nope");
+        Layout layout = Layout.lazy(
+            "broken",
+            broken,
+            JsonReaderTest.ROOT.getParent()
+        );
+        Leaf root = layout.load();
+        assertNotNull("has error", layout.getError());
+        assertTrue("stand in", root.getChildren().isEmpty());
+        assertSame(
+            "source kept",
+            broken,
+            layout.toJson(JsonReaderTest.ROOT).get("root")
+        );
+        BinaryWriter out = new BinaryWriter(new ByteArrayOutputStream());
+        try {
+            layout.write(out, JsonReaderTest.ROOT);
+            fail("wrote the stand in");
+        } catch (IOException e) {
+            assertNotNull(e.getMessage());
+        }
+        root.addChild(new PointLeaf());
+        try {
+            layout.toJson(JsonReaderTest.ROOT);
+            fail("wrote the stand in");
+        } catch (JSONException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testImagesReleased() throws IOException {
+        Path dir = Files.createTempDirectory("peony");
+        Path file = dir.resolve("a.png");
+        Path game = dir.resolve("game.json");
+        ImageIO.write(
+            new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB),
+            "png",
+            file.toFile()
+        );
+        ImageCache cache = ImageCache.getShared();
+        int held = cache.getHeld();
+        ImageLeaf image = new ImageLeaf();
+        image.setFile(file.toFile());
+        Layout made = new Layout("made");
+        ((Leaf)made.getRoot()).addChild(image);
+        JSONObject json = made.toJson(game).getJSONObject("root");
+        ((Leaf)made.getRoot()).release();
+        assertEquals("let go", held, cache.getHeld());
+        Layout layout = Layout.lazy("lazy", json, dir);
+        layout.toJson(dir.resolve("elsewhere/game.json"));
+        assertEquals("peeked one let go", held, cache.getHeld());
+        layout.load();
+        assertEquals("held while loaded", held + 1, cache.getHeld());
+        assertTrue(layout.unload());
+        assertEquals("let go when unloaded", held, cache.getHeld());
+        Files.delete(file);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testAbandonedReleased() throws IOException {
+        Path dir = Files.createTempDirectory("peony");
+        Path file = dir.resolve("a.png");
+        Path path = dir.resolve("game.json");
+        ImageIO.write(
+            new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB),
+            "png",
+            file.toFile()
+        );
+        ImageCache cache = ImageCache.getShared();
+        int held = cache.getHeld();
+        Layout top = new Layout("top");
+        for (int i = 0; i < 4; i++) {
+            Layout child = new Layout(String.format("child%d", i));
+            ImageLeaf image = new ImageLeaf();
+            image.setFile(file.toFile());
+            ((Leaf)child.getRoot()).addChild(image);
+            top.addChild(child);
+        }
+        Game game = new Game("game", "1.0.0", top, null);
+        JSONObject json = game.toJson(path);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryWriter out = new BinaryWriter(bytes);
+        game.write(out, path);
+        out.flush();
+        for (Layout child: top.getChildren()) {
+            ((Leaf)child.getRoot()).release();
+        }
+        assertEquals("let go", held, cache.getHeld());
+        json.getJSONObject("layout")
+            .getJSONArray("children")
+            .getJSONObject(3)
+            .remove("root");
+        Result<Game> read = Game.read(
+            new JsonReader(new StringReader(json.toString())),
+            dir
+        );
+        assertFalse("broken", read.success());
+        assertEquals("json let go", held, cache.getHeld());
+        byte[] whole = bytes.toByteArray();
+        BinaryReader in = new BinaryReader(
+            new ByteArrayInputStream(Arrays.copyOf(whole, whole.length - 4))
+        );
+        assertThrows(IOException.class, () -> Game.read(in, dir));
+        assertEquals("binary let go", held, cache.getHeld());
+        Files.delete(file);
+        Files.delete(dir);
+    }
+}
@@ -0,0 +1,187 @@
+package peony;
+
+import org.junit.Test;
+
+import javax.swing.tree.TreePath;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the parts of leaves that don't need anything to be drawn.
+ */
+public class LeafTest {
+    /**
+     * Makes a point leaf with a given transformation.
+     * @param x        is the x translation.
+     * @param y        is the y translation.
+     * @param rotation is the rotation.
+     * @param s        is the scale.
+     * @return the new leaf.
+     */
+    private static Leaf makeLeaf(float x, float y, float rotation, float s) {
+        Leaf leaf = new PointLeaf();
+        leaf.getTransformation().setTranslation(x, y);
+        leaf.getTransformation().setRotation(rotation);
+        leaf.getTransformation().setScale(s);
+        return leaf;
+    }
+
+    /**
+     * Gives you the x position of a leaf's origin in world space.
+     * @param leaf is the leaf.
+     * @return the x position.
+     */
+    private static float worldX(Leaf leaf) {
+        return leaf.localToGlobal(Point.ORIGIN).getX();
+    }
+
+    @Test
+    public void testGlobalToLocal() {
+        Leaf root = LeafTest.makeLeaf(10, 20, 0.5f, 2);
+        Leaf middle = LeafTest.makeLeaf(-4, 3, 1.1f, 0.5f);
+        Leaf bottom = LeafTest.makeLeaf(7, 7, -0.3f, 3);
+        root.addChild(middle);
+        middle.addChild(bottom);
+        Point world = new Point(33, -12);
+        Point expected = bottom.getTransformation().in(
+            middle.getTransformation().in(root.getTransformation().in(world))
+        );
+        Point local = bottom.globalToLocal(world);
+        assertEquals("same as by hand", expected.getX(), local.getX(), 0.01);
+        assertEquals("same as by hand", expected.getY(), local.getY(), 0.01);
+        Point back = bottom.localToGlobal(local);
+        assertEquals("round trip", 33, back.getX(), 0.01);
+        assertEquals("round trip", -12, back.getY(), 0.01);
+    }
+
+    @Test
+    public void testAncestorChangesPropagate() {
+        Leaf root = LeafTest.makeLeaf(0, 0, 0, 1);
+        Leaf middle = LeafTest.makeLeaf(10, 0, 0, 1);
+        Leaf bottom = LeafTest.makeLeaf(10, 0, 0, 1);
+        root.addChild(middle);
+        middle.addChild(bottom);
+        assertEquals("before", 20, LeafTest.worldX(bottom), 0.01);
+        root.getTransformation().setScale(2);
+        assertEquals("scaled", 40, LeafTest.worldX(bottom), 0.01);
+        middle.getTransformation().translate(new Point(5, 0));
+        assertEquals("moved", 50, LeafTest.worldX(bottom), 0.01);
+        root.getTransformation().setRotation((float)(Math.PI / 2));
+        Point rotated = bottom.localToGlobal(Point.ORIGIN);
+        assertEquals("rotated", 0, rotated.getX(), 0.01);
+        assertEquals("rotated", -50, rotated.getY(), 0.01);
+    }
+
+    @Test
+    public void testReparentingPropagates() {
+        Leaf root = LeafTest.makeLeaf(0, 0, 0, 1);
+        Leaf left = LeafTest.makeLeaf(-10, 0, 0, 1);
+        Leaf right = LeafTest.makeLeaf(10, 0, 0, 1);
+        Leaf child = LeafTest.makeLeaf(1, 0, 0, 1);
+        root.addChild(left);
+        root.addChild(right);
+        left.addChild(child);
+        assertEquals("on left", -9, LeafTest.worldX(child), 0.01);
+        left.removeChild(child);
+        right.addChild(child);
+        assertEquals("on right", 11, LeafTest.worldX(child), 0.01);
+    }
+
+    @Test
+    public void testSubtreeBounds() {
+        Leaf root = LeafTest.makeLeaf(0, 0, 0, 1);
+        Leaf child = LeafTest.makeLeaf(100, 0, 0, 1);
+        Leaf grandchild = LeafTest.makeLeaf(0, 50, 0, 2);
+        root.addChild(child);
+        child.addChild(grandchild);
+        Rectangle bounds = root.getSubtreeBounds();
+        assertEquals("left", -16, bounds.getPos().getX(), 0.01);
+        assertEquals("top", -16, bounds.getPos().getY(), 0.01);
+        assertEquals("width", 148, bounds.getSize().getX(), 0.01);
+        assertEquals("height", 98, bounds.getSize().getY(), 0.01);
+        child.getTransformation().translate(new Point(0, -200));
+        bounds = root.getSubtreeBounds();
+        assertEquals("moved top", -216, bounds.getPos().getY(), 0.01);
+        grandchild.getTransformation().setScale(1);
+        bounds = root.getSubtreeBounds();
+        assertEquals("shrunk", 232, bounds.getSize().getY(), 0.01);
+    }
+
+    @Test
+    public void testAddOutsideBounds() {
+        Leaf root = LeafTest.makeLeaf(0, 0, 0, 1);
+        Leaf child = LeafTest.makeLeaf(0, 0, 0, 1);
+        root.addChild(child);
+        assertEquals(32, root.getSubtreeBounds().getSize().getX(), 0.01);
+        Leaf far = LeafTest.makeLeaf(500, 500, 0, 1);
+        child.addChild(far);
+        Rectangle bounds = root.getSubtreeBounds();
+        assertEquals("grew", 532, bounds.getSize().getX(), 0.01);
+        assertEquals("grew", 532, bounds.getSize().getY(), 0.01);
+        assertSame("found", far, root.hit(new Point(500, 500)).getA());
+    }
+
+    @Test
+    public void testUniqueNames() {
+        Leaf root = LeafTest.makeLeaf(0, 0, 0, 1);
+        List<Leaf> added = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Leaf leaf = new SpriteLeaf();
+            root.addChild(leaf);
+            added.add(leaf);
+        }
+        assertEquals("sprite", added.get(0).getName());
+        assertEquals("sprite999", added.get(999).getName());
+        assertSame(added.get(500), root.getChildByName("sprite500"));
+        added.get(3).setName("other");
+        assertNull("old name gone", root.getChildByName("sprite3"));
+        assertSame(added.get(3), root.getChildByName("other"));
+        assertTrue(root.removeChild(added.get(4)));
+        assertNull("removed", root.getChildByName("sprite4"));
+        Leaf next = new SpriteLeaf();
+        root.addChild(next);
+        assertEquals("counts on", "sprite1000", next.getName());
+    }
+
+    @Test
+    public void testMoveKeepsNamesUnique() {
+        Layout layout = new Layout("test");
+        Leaf root = (Leaf)layout.getRoot();
+        Leaf left = new PointLeaf();
+        Leaf right = new PointLeaf();
+        root.addChild(left);
+        root.addChild(right);
+        Leaf a = new ShapeLeaf();
+        Leaf b = new ShapeLeaf();
+        Leaf c = new ShapeLeaf();
+        left.addChild(a);
+        left.addChild(b);
+        right.addChild(c);
+        layout.moveLeaf(left, c.getLineage().getParentPath(), a, 0);
+        assertEquals("shape1", a.getName());
+        assertSame(a, right.getChildByName("shape1"));
+        assertNull("not on left", left.getChildByName("shape"));
+        assertSame(b, left.getChildByName("shape1"));
+        assertSame(a, right.getChildren().get(0));
+        layout.moveLeaf(right, a.getLineage().getParentPath(), a, 2);
+        assertSame("moved to the end", a, right.getChildren().get(1));
+        assertEquals("kept it's name", "shape1", a.getName());
+        Game game = new Game("game", "1", new Layout("first"), null);
+        Layout first = game.getFirstLayout();
+        Layout one = first.createChild();
+        Layout two = first.createChild();
+        Layout inner = one.createChild();
+        assertEquals("layout1", two.getName());
+        game.moveLayout(
+            one,
+            new TreePath(new Object[]{first}),
+            inner,
+            -1
+        );
+        assertEquals("layout2", inner.getName());
+        assertSame(inner, first.getChildByName("layout2"));
+        assertTrue(one.getChildren().isEmpty());
+    }
+}
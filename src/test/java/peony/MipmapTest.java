@@ -0,0 +1,65 @@
+package peony;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+/**
+ * Makes sure mipmaps pick sensible levels and make them the right size.
+ */
+public class MipmapTest {
+    @Test
+    public void testLevels() {
+        Mipmap mipmap = new Mipmap(
+            new BufferedImage(64, 16, BufferedImage.TYPE_INT_ARGB)
+        );
+        assertEquals(5, mipmap.getLevelCount());
+        assertEquals(0, mipmap.getLevelFor(2));
+        assertEquals(0, mipmap.getLevelFor(1));
+        assertEquals(0, mipmap.getLevelFor(0.6));
+        assertEquals(1, mipmap.getLevelFor(0.5));
+        assertEquals(1, mipmap.getLevelFor(0.3));
+        assertEquals(2, mipmap.getLevelFor(0.25));
+        assertEquals("stops at the smallest", 4, mipmap.getLevelFor(0.001));
+        Image level = mipmap.getLevel(2);
+        assertEquals(16, level.getWidth(null));
+        assertEquals(4, level.getHeight(null));
+        assertSame("made once", level, mipmap.getLevel(2));
+        assertSame(mipmap.getImage(), mipmap.getLevel(0));
+    }
+
+    @Test
+    public void testRegionLevels() {
+        Mipmap mipmap = new Mipmap(
+            new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB)
+        );
+        Rectangle big = new Rectangle(new Point(32, 64));
+        Rectangle small = new Rectangle(new Point(16, 16));
+        Rectangle tiny = new Rectangle(new Point(4, 30));
+        assertEquals(1, mipmap.getLevelFor(0.5, big));
+        assertEquals("big enough", 2, mipmap.getLevelFor(0.001, big));
+        assertEquals("stays 8 across", 1, mipmap.getLevelFor(0.001, small));
+        assertEquals("too small", 0, mipmap.getLevelFor(0.001, tiny));
+    }
+
+    @Test
+    public void testCompatible() {
+        BufferedImage screen = Mipmap.createCompatible(
+            4,
+            4,
+            Transparency.TRANSLUCENT
+        );
+        assertSame("already right", screen, Mipmap.toCompatible(screen));
+        BufferedImage other = new BufferedImage(
+            4,
+            4,
+            BufferedImage.TYPE_4BYTE_ABGR
+        );
+        Image converted = Mipmap.toCompatible(other);
+        assertNotSame("converted", other, converted);
+        assertSame("now right", converted, Mipmap.toCompatible(converted));
+    }
+}
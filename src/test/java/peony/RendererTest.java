@@ -0,0 +1,82 @@
+package peony;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+/**
+ * Makes sure the renderer skips leaves that are off the screen, and doesn't
+ * skip ones that only have their name on it.
+ */
+public class RendererTest {
+    /**
+     * Makes a renderer that draws to a little image with a clip on it.
+     * @return the renderer.
+     */
+    private static Renderer makeRenderer() {
+        BufferedImage image = new BufferedImage(
+            200,
+            200,
+            BufferedImage.TYPE_INT_ARGB
+        );
+        Graphics2D g = image.createGraphics();
+        g.setClip(0, 0, 200, 200);
+        return new Renderer(g, null, null);
+    }
+
+    /**
+     * Makes a point leaf with a name at a spot.
+     * @param name is the name to give it.
+     * @param x    is the x position.
+     * @param y    is the y position.
+     * @return the leaf.
+     */
+    private static Leaf makeLeaf(String name, float x, float y) {
+        Leaf leaf = new PointLeaf();
+        leaf.setName(name);
+        leaf.getTransformation().setTranslation(x, y);
+        return leaf;
+    }
+
+    @Test
+    public void testCulled() {
+        Leaf root = RendererTest.makeLeaf("root", 100, 100);
+        root.addChild(RendererTest.makeLeaf("near", 20, 20));
+        root.addChild(RendererTest.makeLeaf("far", 5000, 5000));
+        Renderer r = RendererTest.makeRenderer();
+        root.render(r);
+        assertEquals(2, r.getDrawnCount());
+        assertEquals(1, r.getCulledCount());
+    }
+
+    @Test
+    public void testTransformed() {
+        Leaf root = RendererTest.makeLeaf("root", 0, 0);
+        root.addChild(RendererTest.makeLeaf("far", 5000, 5000));
+        Renderer r = RendererTest.makeRenderer();
+        Transformation zoom = new Transformation();
+        zoom.setScale(0.02f);
+        r.push(zoom);
+        root.render(r);
+        assertEquals("zoomed out onto the screen", 2, r.getDrawnCount());
+        assertEquals(0, r.getCulledCount());
+    }
+
+    @Test
+    public void testLabels() {
+        Leaf root = RendererTest.makeLeaf("root", 100, 100);
+        root.addChild(RendererTest.makeLeaf("a", -160, 0));
+        root.addChild(RendererTest.makeLeaf(
+            "a name that is long enough to stick out",
+            -160,
+            50
+        ));
+        Renderer r = RendererTest.makeRenderer();
+        root.render(r);
+        assertEquals("name sticks onto the screen", 2, r.getDrawnCount());
+        assertEquals("short name doesn't", 1, r.getCulledCount());
+    }
+}
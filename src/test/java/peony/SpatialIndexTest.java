@@ -0,0 +1,87 @@
+package peony;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertSame;
+
+/**
+ * Makes sure that the spatial index finds the same leaves as just looking at
+ * every leaf does.
+ */
+public class SpatialIndexTest {
+    /**
+     * Makes a layout full of randomly placed leaves.
+     * @param random is the thing to get the randomness from.
+     * @param leaves is a list that all the created leaves get put in.
+     * @return the layout.
+     */
+    private static Layout makeLayout(Random random, List<Leaf> leaves) {
+        Layout layout = new Layout("test");
+        leaves.add((Leaf)layout.getRoot());
+        for (int i = 0; i < 300; i++) {
+            Leaf parent = leaves.get(random.nextInt(leaves.size()));
+            Leaf leaf = random.nextBoolean() ?
+                new ShapeLeaf() :
+                new PointLeaf();
+            leaf.getTransformation().setTranslation(
+                random.nextFloat() * 400 - 200,
+                random.nextFloat() * 400 - 200
+            );
+            leaf.getTransformation().setRotation(random.nextFloat() * 6);
+            leaf.getTransformation().setScale(random.nextFloat() + 0.5f);
+            leaf.setLocked(random.nextInt(10) == 0);
+            parent.addChild(leaf);
+            leaves.add(leaf);
+        }
+        return layout;
+    }
+
+    /**
+     * Checks that the index and the full search agree all over the place.
+     * @param random is the randomness.
+     * @param layout is the layout to check.
+     */
+    private static void checkAgrees(Random random, Layout layout) {
+        Leaf root = (Leaf)layout.getRoot();
+        for (int i = 0; i < 2000; i++) {
+            Point point = new Point(
+                random.nextFloat() * 1600 - 800,
+                random.nextFloat() * 1600 - 800
+            );
+            Pair<Leaf, Point> expected = root.hit(point);
+            Pair<Leaf, Point> found = layout.hit(point);
+            assertSame("same leaf", expected.getA(), found.getA());
+            assertSame("same point", expected.getB(), found.getB());
+        }
+    }
+
+    @Test
+    public void testSameAsFullSearch() {
+        Random random = new Random(5);
+        List<Leaf> leaves = new ArrayList<>();
+        Layout layout = SpatialIndexTest.makeLayout(random, leaves);
+        SpatialIndexTest.checkAgrees(random, layout);
+    }
+
+    @Test
+    public void testFollowsChanges() {
+        Random random = new Random(8);
+        List<Leaf> leaves = new ArrayList<>();
+        Layout layout = SpatialIndexTest.makeLayout(random, leaves);
+        SpatialIndexTest.checkAgrees(random, layout);
+        for (int i = 0; i < 50; i++) {
+            Leaf leaf = leaves.get(random.nextInt(leaves.size()));
+            leaf.getTransformation().translate(new Point(
+                random.nextFloat() * 200 - 100,
+                random.nextFloat() * 200 - 100
+            ));
+            leaf.getTransformation().setScale(random.nextFloat() + 0.5f);
+            if (leaf instanceof ShapeLeaf) ((ShapeLeaf)leaf).recentre();
+        }
+        SpatialIndexTest.checkAgrees(random, layout);
+    }
+}
@@ -0,0 +1,55 @@
+package peony;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Makes sure sprites waiting on an atlas page all get told once when it is
+ * ready.
+ */
+public class TextureAtlasTest {
+    @Test
+    public void testPageWaiters() throws IOException {
+        Path dir = Files.createTempDirectory("peony");
+        Path file = dir.resolve("page.png");
+        ImageIO.write(
+            new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB),
+            "png",
+            file.toFile()
+        );
+        CompletableFuture<ImageCache.Handle> handle =
+            new CompletableFuture<>();
+        TextureAtlas.Page page = new TextureAtlas.Page(handle);
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+        Runnable a = first::incrementAndGet;
+        Runnable b = second::incrementAndGet;
+        for (int i = 0; i < 100; i++) {
+            assertNull("not ready", page.getNow(a));
+            assertNull("not ready", page.getNow(b));
+        }
+        ImageCache cache = new ImageCache(ImageCache.DEFAULT_BUDGET);
+        handle.complete(cache.acquire(file).value());
+        assertEquals("told once", 1, first.get());
+        assertEquals("both told", 1, second.get());
+        assertNotNull("ready", page.getNow(a));
+        assertEquals("not told again", 1, first.get());
+        TextureAtlas.Page broken = new TextureAtlas.Page(
+            CompletableFuture.completedFuture(null)
+        );
+        assertNull("failed", broken.getNow(a));
+        assertEquals("not told", 1, first.get());
+        handle.join().release();
+        Files.delete(file);
+        Files.delete(dir);
+    }
+}
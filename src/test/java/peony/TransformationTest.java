@@ -2,6 +2,8 @@ package peony;
 
 import org.junit.Test;
 
+import java.awt.geom.Point2D;
+
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -53,4 +55,47 @@ public class TransformationTest {
         assertEquals("Don't modify input", 2, b.getX(), 0);
         assertEquals("Don't modify input", -2, b.getY(), 0);
     }
+
+    @Test
+    public void testInOutRoundTrip() {
+        Transformation t = new Transformation(new Point(-3, 7), 1.2f, 2.5f);
+        Point a = new Point(13, -4);
+        Point back = t.out(t.in(a));
+        assertEquals("round trip", 13, back.getX(), 0.01);
+        assertEquals("round trip", -4, back.getY(), 0.01);
+    }
+
+    @Test
+    public void testChangesInvalidateMatrix() {
+        Transformation t = new Transformation();
+        Point a = new Point(2, 0);
+        assertEquals("identity at first", 2, t.out(a).getX(), 0.01);
+        t.setScale(3);
+        assertEquals("scale gets used", 6, t.out(a).getX(), 0.01);
+        t.setRotation((float)(Math.PI / 2));
+        assertEquals("rotation gets used", 0, t.out(a).getX(), 0.01);
+        assertEquals("rotation gets used", -6, t.out(a).getY(), 0.01);
+        t.getTranslation().set(1, 1);
+        assertEquals("translation gets used", 1, t.out(a).getX(), 0.01);
+        assertEquals("translation gets used", -5, t.out(a).getY(), 0.01);
+    }
+
+    @Test
+    public void testMatrixMatchesOut() {
+        Transformation t = new Transformation(new Point(5, 5), 0.7f, 0.5f);
+        Point a = new Point(6, -10);
+        Point out = t.out(a);
+        Point2D matrixOut = t.getMatrix().transform(
+            new Point2D.Float(a.getX(), a.getY()),
+            null
+        );
+        assertEquals("matrix agrees", out.getX(), matrixOut.getX(), 0.01);
+        assertEquals("matrix agrees", out.getY(), matrixOut.getY(), 0.01);
+        Point2D matrixIn = t.getInverse().transform(
+            matrixOut,
+            null
+        );
+        assertEquals("inverse agrees", 6, matrixIn.getX(), 0.01);
+        assertEquals("inverse agrees", -10, matrixIn.getY(), 0.01);
+    }
 }